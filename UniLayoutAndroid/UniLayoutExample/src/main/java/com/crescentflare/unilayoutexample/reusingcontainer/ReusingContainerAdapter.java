@@ -19,7 +19,7 @@ import java.util.List;
  * Reusing container example: adapter
  * Provides display of reusable items
  */
-public class ReusingContainerAdapter extends UniReusingContainer.Adapter
+public class ReusingContainerAdapter extends UniReusingContainer.NamedAdapter
 {
     // ---
     // Members
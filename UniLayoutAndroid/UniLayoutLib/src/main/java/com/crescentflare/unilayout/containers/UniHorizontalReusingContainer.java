@@ -0,0 +1,1358 @@
+package com.crescentflare.unilayout.containers;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.util.AttributeSet;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.HorizontalScrollView;
+
+import com.crescentflare.unilayout.helpers.UniBitSet;
+import com.crescentflare.unilayout.helpers.UniItemMetadataStore;
+import com.crescentflare.unilayout.helpers.UniMeasureCache;
+import com.crescentflare.unilayout.helpers.UniOffsetIndex;
+import com.crescentflare.unilayout.helpers.UniQuantileSizeEstimator;
+import com.crescentflare.unilayout.helpers.UniRecyclePool;
+import com.crescentflare.unilayout.helpers.UniRingBuffer;
+import com.crescentflare.unilayout.helpers.UniScrollListener;
+import com.crescentflare.unilayout.helpers.UniSizeEstimator;
+import com.crescentflare.unilayout.views.UniReusableView;
+
+/**
+ * UniLayout container: a horizontal scroll view with reusable views
+ * The horizontal counterpart of the reusing container, uses the same adapter and only keeps the views of the items in view (and a margin around it)
+ */
+public class UniHorizontalReusingContainer extends HorizontalScrollView
+{
+    // ---
+    // Constants
+    // ---
+
+    private static final int DEFAULT_RECYCLE_LIMIT = 32;
+    private static final int MEASURE_CACHE_HEIGHTS = 2;
+
+
+    // ---
+    // Members
+    // ---
+
+    private UniRecyclePool<UsingView> recyclePool = new UniRecyclePool<>(DEFAULT_RECYCLE_LIMIT);
+    private LayoutContainer contentView;
+    private UniScrollListener scrollListener;
+    private boolean multiSelect;
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public UniHorizontalReusingContainer(Context context)
+    {
+        this(context, (AttributeSet)null);
+    }
+
+    public UniHorizontalReusingContainer(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+        init(attrs);
+    }
+
+    public UniHorizontalReusingContainer(Context context, AttributeSet attrs, int defStyleAttr)
+    {
+        this(context, attrs);
+    }
+
+    public UniHorizontalReusingContainer(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes)
+    {
+        this(context, attrs);
+    }
+
+    private void init(AttributeSet attrs)
+    {
+    }
+
+
+    // ---
+    // Data handling
+    // ---
+
+    public UniReusingContainer.Adapter getAdapter()
+    {
+        if (contentView != null)
+        {
+            return contentView.adapter;
+        }
+        return null;
+    }
+
+    public void setAdapter(UniReusingContainer.Adapter adapter)
+    {
+        // Remove content view when removing the adapter
+        if (adapter == null && contentView != null)
+        {
+            contentView.setAdapter(null);
+            removeView(contentView);
+            contentView = null;
+            recyclePool.clear();
+        }
+
+        // Add the content view if setting an adapter
+        boolean newCreated = false;
+        if (adapter != null && contentView == null)
+        {
+            contentView = new LayoutContainer(getContext());
+            contentView.setLayoutParams(new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            addView(contentView);
+            contentView.setRecyclePool(recyclePool);
+            contentView.setMultiSelect(multiSelect);
+            newCreated = true;
+        }
+
+        // Refresh if needed, view type ids belong to the adapter so recycled views can't be reused by another one
+        if (contentView != null && (contentView.adapter != adapter || newCreated))
+        {
+            boolean adapterChanged = !newCreated;
+            contentView.setAdapter(adapter);
+            contentView.refreshCalculation(false);
+            if (adapterChanged)
+            {
+                recyclePool.clear();
+            }
+            requestLayout();
+        }
+    }
+
+    public int getAdapterPosition(UniReusableView view)
+    {
+        if (contentView != null && view != null && view.getParent() == contentView)
+        {
+            return view.getItemPosition();
+        }
+        return -1;
+    }
+
+    public void setMultiSelect(boolean enabled)
+    {
+        multiSelect = enabled;
+        if (contentView != null)
+        {
+            contentView.setMultiSelect(multiSelect);
+        }
+    }
+
+    public boolean isMultiSelect()
+    {
+        return multiSelect;
+    }
+
+
+    // ---
+    // Recycling limits
+    // ---
+
+    public void setDefaultRecycleLimit(int limit)
+    {
+        recyclePool.setDefaultLimit(limit);
+    }
+
+    public int getDefaultRecycleLimit()
+    {
+        return recyclePool.getDefaultLimit();
+    }
+
+    public void setRecycleLimit(int viewTypeId, int limit)
+    {
+        recyclePool.setLimit(viewTypeId, limit);
+    }
+
+    public void setRecycleLimit(String viewType, int limit)
+    {
+        setRecycleLimit(getViewTypeId(viewType), limit);
+    }
+
+    public int getRecycleLimit(int viewTypeId)
+    {
+        return recyclePool.getLimit(viewTypeId);
+    }
+
+    public int getRecycleLimit(String viewType)
+    {
+        return getRecycleLimit(getViewTypeId(viewType));
+    }
+
+    private int getViewTypeId(String viewType)
+    {
+        // View type names belong to the adapter, set a named adapter before using them
+        UniReusingContainer.Adapter adapter = getAdapter();
+        return adapter instanceof UniReusingContainer.NamedAdapter ? ((UniReusingContainer.NamedAdapter)adapter).getViewTypeId(viewType) : UniReusingContainer.UNDEFINED_VIEW_TYPE;
+    }
+
+
+    // ---
+    // Scroll handling
+    // ---
+
+    public void setScrollListener(UniScrollListener scrollListener)
+    {
+        this.scrollListener = scrollListener;
+    }
+
+    @Override
+    protected void onScrollChanged(int x, int y, int oldX, int oldY)
+    {
+        super.onScrollChanged(x, y, oldX, oldY);
+        if (scrollListener != null)
+        {
+            scrollListener.onScrollChanged(x, y, oldX, oldY);
+        }
+        if (contentView != null)
+        {
+            contentView.setOffsetX(x);
+        }
+    }
+
+    public void scrollToPosition(int itemPosition)
+    {
+        scrollToPosition(itemPosition, 0);
+    }
+
+    public void scrollToPosition(int itemPosition, float locationInView)
+    {
+        // Jump to the item in the next layout pass, the items around it are laid out from there
+        if (contentView != null && contentView.getReusableViewCount() > 0)
+        {
+            int toPosition = Math.max(0, Math.min(itemPosition, contentView.getReusableViewCount() - 1));
+            contentView.setScrollAnchor(toPosition, locationInView);
+        }
+    }
+
+    public int getPositionAtX(int x)
+    {
+        // The position of the item at the given x coordinate of this view, or -1 if there is no item
+        if (contentView == null || contentView.getReusableViewCount() == 0)
+        {
+            return -1;
+        }
+        int contentX = x + getScrollX() - contentView.getLeft();
+        if (contentX < contentView.getItemX(0) || contentX >= contentView.getItemX(contentView.getReusableViewCount()))
+        {
+            return -1;
+        }
+        return contentView.getPositionAtX(contentX);
+    }
+
+
+    // ---
+    // Get reusable views manually
+    // ---
+
+    public UniReusableView getReusableView(int position)
+    {
+        return contentView != null ? contentView.getReusableView(position) : null;
+    }
+
+
+    // ---
+    // Forward padding from/into the content view
+    // ---
+
+    public void setContentPadding(int left, int top, int right, int bottom)
+    {
+        contentView.setPadding(left, top, right, bottom);
+    }
+
+    public int getContentPaddingTop()
+    {
+        return contentView.getPaddingTop();
+    }
+
+    public int getContentPaddingBottom()
+    {
+        return contentView.getPaddingBottom();
+    }
+
+    public int getContentPaddingLeft()
+    {
+        return contentView.getPaddingLeft();
+    }
+
+    public int getContentPaddingRight()
+    {
+        return contentView.getPaddingRight();
+    }
+
+
+    // ---
+    // Custom layout
+    // ---
+
+    private Point measuredSize = new Point();
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+    {
+        // Determine available size without padding
+        int widthSpec = MeasureSpec.getMode(widthMeasureSpec);
+        int heightSpec = MeasureSpec.getMode(heightMeasureSpec);
+        int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+        int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+        int paddedWidthSize = widthSize - getPaddingLeft() - getPaddingRight();
+        int paddedHeightSize = heightSize - getPaddingTop() - getPaddingBottom();
+        measuredSize.x = getPaddingLeft();
+        measuredSize.y = getPaddingTop();
+        if (widthSpec == MeasureSpec.UNSPECIFIED)
+        {
+            paddedWidthSize = 0xFFFFFF;
+        }
+        if (heightSpec == MeasureSpec.UNSPECIFIED)
+        {
+            paddedHeightSize = 0xFFFFFF;
+        }
+
+        // Measure items from adapter
+        if (contentView != null)
+        {
+            int childHeightSpec = MeasureSpec.AT_MOST;
+            if (heightSpec == MeasureSpec.EXACTLY)
+            {
+                childHeightSpec = MeasureSpec.EXACTLY;
+            }
+            contentView.measure(MeasureSpec.makeMeasureSpec(paddedWidthSize, MeasureSpec.UNSPECIFIED), MeasureSpec.makeMeasureSpec(paddedHeightSize, childHeightSpec));
+            measuredSize.x += contentView.getMeasuredWidth();
+            measuredSize.y += contentView.getMeasuredHeight();
+
+            // Prevent scrolling past limit, if estimated sizes were different
+            int maxScrollX = Math.max(0, contentView.getMeasuredWidth() - paddedWidthSize);
+            if (getScrollX() > maxScrollX)
+            {
+                scrollTo(maxScrollX, getScrollY());
+                contentView.measure(MeasureSpec.makeMeasureSpec(paddedWidthSize, MeasureSpec.UNSPECIFIED), MeasureSpec.makeMeasureSpec(paddedHeightSize, childHeightSpec));
+            }
+        }
+
+        // Adjust final measure with padding and limitations
+        measuredSize.x += getPaddingRight();
+        measuredSize.y += getPaddingBottom();
+        if (widthSpec == MeasureSpec.EXACTLY)
+        {
+            measuredSize.x = widthSize;
+        }
+        else if (widthSpec == MeasureSpec.AT_MOST)
+        {
+            measuredSize.x = Math.min(measuredSize.x, widthSize);
+        }
+        if (heightSpec == MeasureSpec.EXACTLY)
+        {
+            measuredSize.y = heightSize;
+        }
+        else if (heightSpec == MeasureSpec.AT_MOST)
+        {
+            measuredSize.y = Math.min(measuredSize.y, heightSize);
+        }
+        setMeasuredDimension(measuredSize.x, measuredSize.y);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom)
+    {
+        if (contentView != null)
+        {
+            contentView.layout(getPaddingLeft(), getPaddingTop(), getPaddingLeft() + contentView.getMeasuredWidth(), getPaddingTop() + contentView.getMeasuredHeight());
+            if (contentView.pendingScrollX >= 0)
+            {
+                int scrollX = contentView.pendingScrollX;
+                contentView.pendingScrollX = -1;
+                contentView.pendingScrollCorrection = 0;
+                scrollTo(scrollX, getScrollY());
+            }
+            else if (contentView.pendingScrollCorrection != 0)
+            {
+                int scrollCorrection = contentView.pendingScrollCorrection;
+                contentView.pendingScrollCorrection = 0;
+                scrollTo(getScrollX() + scrollCorrection, getScrollY());
+            }
+        }
+    }
+
+
+    // ---
+    // Layout container
+    // ---
+
+    private static class LayoutContainer extends ViewGroup implements UniReusingContainer.DataSetRangeChangedListener
+    {
+        // ---
+        // Members
+        // ---
+
+        private UniRingBuffer<UsingView> usingViews = new UniRingBuffer<>();
+        private UniRecyclePool<UsingView> recyclePool;
+        private UniReusingContainer.Adapter adapter;
+        private int offsetX;
+        private int extraMarginX;
+        private int usingViewStartPosition;
+        private int usingViewStartX;
+        private int pendingScrollCorrection;
+        private int pendingScrollX = -1;
+        private int anchorPosition = -1;
+        private float anchorLocation;
+        private int itemHeight;
+        private Point measuredSize = new Point();
+        private UniItemMetadataStore itemMetadata = new UniItemMetadataStore();
+        private UniOffsetIndex offsetIndex = new UniOffsetIndex();
+        private UniMeasureCache measureCache = new UniMeasureCache(MEASURE_CACHE_HEIGHTS);
+        private UniSizeEstimator widthEstimator = new UniQuantileSizeEstimator();
+        private int[] groupWidths = new int[UniOffsetIndex.MAX_ESTIMATE_GROUPS];
+        private boolean groupEstimatesInvalidated = true;
+        private int groupEstimatesHeight = -1;
+        private boolean offsetIndexInvalidated;
+        private boolean multiSelect;
+        private int matchBoundVersion;
+
+        private final UniRecyclePool.Matcher<UsingView> boundVersionMatcher = new UniRecyclePool.Matcher<UsingView>()
+        {
+            @Override
+            public boolean matches(UsingView item)
+            {
+                return item.boundVersion == matchBoundVersion;
+            }
+        };
+
+
+        // ---
+        // Initialization
+        // ---
+
+        public LayoutContainer(Context context)
+        {
+            super(context);
+            extraMarginX = (int)(getResources().getDisplayMetrics().density * 64);
+        }
+
+
+        // ---
+        // Settings
+        // ---
+
+        public void setRecyclePool(UniRecyclePool<UsingView> recyclePool)
+        {
+            this.recyclePool = recyclePool;
+        }
+
+        public void setMultiSelect(boolean multiSelect)
+        {
+            this.multiSelect = multiSelect;
+            if (!multiSelect && adapter != null && adapter.getSelectedCount() > 1)
+            {
+                adapter.clearSelections();
+            }
+        }
+
+
+        // ---
+        // Data handling
+        // ---
+
+        public void setAdapter(UniReusingContainer.Adapter adapter)
+        {
+            if (this.adapter != null)
+            {
+                this.adapter.removeDataSetChangedListener(this);
+            }
+            this.adapter = adapter;
+            if (this.adapter != null)
+            {
+                this.adapter.addDataSetChangedListener(this);
+            }
+        }
+
+        @Override
+        public void onDataSetChanged()
+        {
+            refreshCalculation(true);
+            requestLayout();
+        }
+
+        @Override
+        public void onDataItemChanged(int itemPosition)
+        {
+            onDataItemRangeChanged(itemPosition, 1);
+        }
+
+        @Override
+        public void onDataItemStateChanged(int itemPosition)
+        {
+            // Only update the state of the view, the size doesn't change
+            updateWindowItemState(itemPosition);
+            if (!multiSelect && adapter != null && adapter.getSelectedCount() > 1 && isItemSelected(itemPosition))
+            {
+                adapter.selectOnly(itemPosition);
+            }
+        }
+
+        @Override
+        public void onDataItemRangeStateChanged(int itemPosition, int itemCount)
+        {
+            updateWindowItemStates(itemPosition, itemCount);
+            keepSingleSelection(itemPosition);
+        }
+
+        private void updateWindowItemStates(int itemPosition, int itemCount)
+        {
+            int fromPosition = Math.max(itemPosition, usingViewStartPosition);
+            int toPosition = Math.min(itemPosition + itemCount, usingViewStartPosition + usingViews.size());
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                updateWindowItemState(i);
+            }
+        }
+
+        private void keepSingleSelection(int itemPosition)
+        {
+            if (!multiSelect && adapter != null && adapter.getSelectedCount() > 1)
+            {
+                // Keep the item selected most recently, a batch dispatches the changes in order of position instead
+                int keepPosition = adapter.getLastSelectedPosition();
+                adapter.selectOnly(keepPosition >= 0 ? keepPosition : adapter.getNextSelectedPosition(itemPosition));
+            }
+        }
+
+        private void updateWindowItemState(int itemPosition)
+        {
+            UniReusableView reusableView = getReusableView(itemPosition);
+            if (reusableView != null)
+            {
+                reusableView.setSelected(isItemSelected(itemPosition), true);
+                reusableView.setEnabled(isItemEnabled(itemPosition), true);
+            }
+        }
+
+        @Override
+        public void onDataItemRangeInserted(int itemPosition, int itemCount)
+        {
+            if (applyItemRangeInserted(itemPosition, itemCount))
+            {
+                requestLayout();
+            }
+        }
+
+        @Override
+        public void onDataItemRangeRemoved(int itemPosition, int itemCount)
+        {
+            if (applyItemRangeRemoved(itemPosition, itemCount))
+            {
+                requestLayout();
+            }
+        }
+
+        @Override
+        public void onDataItemMoved(int fromPosition, int toPosition)
+        {
+            if (applyItemMoved(fromPosition, toPosition))
+            {
+                requestLayout();
+            }
+        }
+
+        @Override
+        public void onDataItemRangeChanged(int itemPosition, int itemCount)
+        {
+            if (applyItemRangeChanged(itemPosition, itemCount))
+            {
+                requestLayout();
+            }
+        }
+
+        @Override
+        public void onDataBatchApplied(int[] operations, int operationCount, UniBitSet changedItems, UniBitSet stateChangedItems)
+        {
+            // Apply all updates of the batch, then lay out once
+            boolean layoutNeeded = false;
+            for (int i = 0; i < operationCount; i++)
+            {
+                int first = operations[i * 3 + 1];
+                int second = operations[i * 3 + 2];
+                switch (operations[i * 3])
+                {
+                    case UniReusingContainer.Adapter.BATCH_INSERT:
+                        layoutNeeded |= applyItemRangeInserted(first, second);
+                        break;
+                    case UniReusingContainer.Adapter.BATCH_REMOVE:
+                        layoutNeeded |= applyItemRangeRemoved(first, second);
+                        break;
+                    case UniReusingContainer.Adapter.BATCH_MOVE:
+                        layoutNeeded |= applyItemMoved(first, second);
+                        break;
+                }
+            }
+            for (int start = changedItems.nextSetBit(0); start >= 0; start = changedItems.nextSetBit(start))
+            {
+                int end = changedItems.nextClearBit(start);
+                layoutNeeded |= applyItemRangeChanged(start, end - start);
+                start = end;
+            }
+            int firstStateChanged = stateChangedItems.nextSetBit(0);
+            for (int start = firstStateChanged; start >= 0; start = stateChangedItems.nextSetBit(start))
+            {
+                int end = stateChangedItems.nextClearBit(start);
+                updateWindowItemStates(start, end - start);
+                start = end;
+            }
+            if (firstStateChanged >= 0)
+            {
+                keepSingleSelection(firstStateChanged);
+            }
+            if (layoutNeeded)
+            {
+                requestLayout();
+            }
+        }
+
+        private boolean applyItemRangeInserted(int itemPosition, int itemCount)
+        {
+            if (itemCount > 0 && itemPosition >= 0 && itemPosition <= itemMetadata.getCount())
+            {
+                itemMetadata.insert(itemPosition, itemCount);
+                measureCache.insert(itemPosition, itemCount);
+                offsetIndexInvalidated = true;
+                insertIntoWindow(itemPosition, itemCount);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean applyItemRangeRemoved(int itemPosition, int itemCount)
+        {
+            itemCount = Math.min(itemCount, itemMetadata.getCount() - itemPosition);
+            if (itemCount > 0 && itemPosition >= 0)
+            {
+                removeFromWindow(itemPosition, itemCount);
+                itemMetadata.remove(itemPosition, itemCount);
+                measureCache.remove(itemPosition, itemCount);
+                offsetIndexInvalidated = true;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean applyItemMoved(int fromPosition, int toPosition)
+        {
+            int count = itemMetadata.getCount();
+            if (fromPosition != toPosition && fromPosition >= 0 && fromPosition < count && toPosition >= 0 && toPosition < count)
+            {
+                removeFromWindow(fromPosition, 1);
+                itemMetadata.move(fromPosition, toPosition);
+                measureCache.move(fromPosition, toPosition);
+                offsetIndexInvalidated = true;
+                insertIntoWindow(toPosition, 1);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean applyItemRangeChanged(int itemPosition, int itemCount)
+        {
+            measureCache.invalidate(itemPosition, itemCount);
+            updateStoredViewTypes(itemPosition, itemCount);
+            int fromPosition = Math.max(itemPosition, usingViewStartPosition);
+            int toPosition = Math.min(itemPosition + itemCount, usingViewStartPosition + usingViews.size());
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                UsingView usingView = usingViews.get(i - usingViewStartPosition);
+                if (usingView != null)
+                {
+                    usingView.invalidated = true;
+                }
+            }
+            return fromPosition < toPosition;
+        }
+
+        @Override
+        public void onDataSetRemapped(int[] previousPositions)
+        {
+            // Keep the first item of the window which is still there in place, the measured sizes move along with the items
+            int anchorPosition = -1;
+            int anchorX = usingViewStartX;
+            for (int i = 0; i < previousPositions.length && anchorPosition < 0; i++)
+            {
+                if (previousPositions[i] >= usingViewStartPosition && previousPositions[i] < usingViewStartPosition + usingViews.size())
+                {
+                    anchorPosition = i;
+                    anchorX = getWindowItemX(previousPositions[i] - usingViewStartPosition);
+                }
+            }
+            recycleUsingViews();
+            itemMetadata.remap(previousPositions);
+            if (adapter != null && adapter.hasContentVersions())
+            {
+                measureCache.remap(previousPositions, getContentVersions());
+            }
+            else
+            {
+                measureCache.reset(itemMetadata.getCount());
+            }
+            offsetIndexInvalidated = true;
+            usingViewStartPosition = Math.max(0, anchorPosition);
+            usingViewStartX = anchorPosition >= 0 ? anchorX : 0;
+            requestLayout();
+        }
+
+        public void refreshCalculation(boolean keepMeasuredSizes)
+        {
+            // When the data set changes and the adapter reports content versions, items with the same content at the same position keep their measured size
+            recycleUsingViews();
+            itemMetadata.reset(getReusableViewCount());
+            boolean keepCached = keepMeasuredSizes && adapter != null && adapter.hasContentVersions();
+            if (keepCached)
+            {
+                int[] previousPositions = new int[itemMetadata.getCount()];
+                for (int i = 0; i < previousPositions.length; i++)
+                {
+                    previousPositions[i] = i < measureCache.getCount() ? i : -1;
+                }
+                measureCache.remap(previousPositions, getContentVersions());
+            }
+            else
+            {
+                measureCache.reset(itemMetadata.getCount());
+            }
+            offsetIndex.reset(itemMetadata.getCount());
+            offsetIndexInvalidated = true;
+            widthEstimator.reset();
+            usingViewStartPosition = 0;
+            usingViewStartX = 0;
+            pendingScrollCorrection = 0;
+            if (keepCached)
+            {
+                applyCachedSizes();
+                addMeasuredSamples();
+            }
+            groupEstimatesInvalidated = true;
+        }
+
+        private long[] getContentVersions()
+        {
+            long[] contentVersions = new long[itemMetadata.getCount()];
+            for (int i = 0; i < contentVersions.length; i++)
+            {
+                contentVersions[i] = adapter.getItemContentVersion(i);
+            }
+            return contentVersions;
+        }
+
+        private int getReusableViewCount()
+        {
+            return adapter != null ? adapter.getItemCount() : 0;
+        }
+
+        private int getReusableViewType(int position)
+        {
+            return adapter != null ? adapter.getItemViewTypeId(position) : UniReusingContainer.UNDEFINED_VIEW_TYPE;
+        }
+
+        private int getStoredViewType(int position)
+        {
+            // The view type is stored with the item once it's known, to avoid asking the adapter again
+            int viewType = itemMetadata.getViewType(position);
+            return viewType != UniItemMetadataStore.NO_VIEW_TYPE ? viewType : getReusableViewType(position);
+        }
+
+        private boolean isItemSelected(int position)
+        {
+            return adapter != null && adapter.isItemSelected(position);
+        }
+
+        private boolean isItemEnabled(int position)
+        {
+            return adapter == null || adapter.isItemEnabled(position);
+        }
+
+
+        // ---
+        // Track size measurement
+        // ---
+
+        private void setLastMeasuredSize(int position, int width, int height)
+        {
+            // Store in the item metadata and update the offset index, which indexes the widths
+            int viewType = getReusableViewType(position);
+            boolean firstMeasurement = position < itemMetadata.getCount() && !itemMetadata.isMeasured(position);
+            if (position < itemMetadata.getCount())
+            {
+                UniOffsetIndex offsetIndex = getOffsetIndex();
+                if (itemMetadata.isMeasured(position))
+                {
+                    offsetIndex.addSize(position, width - itemMetadata.getWidth(position), 0);
+                }
+                else
+                {
+                    offsetIndex.addSize(position, width, 1);
+                }
+                offsetIndex.setCrossSize(position, height);
+                itemMetadata.setMeasuredSize(position, width, height);
+                measureCache.put(position, width, height);
+                if (viewType >= 0)
+                {
+                    itemMetadata.setViewType(position, viewType);
+                }
+            }
+
+            // The estimator gets the width along the list, bucketed by the available height across it, measuring the same item again doesn't add another sample
+            if (firstMeasurement)
+            {
+                widthEstimator.addMeasuredSize(viewType >= 0 ? viewType : UniSizeEstimator.ALL_VIEW_TYPES, itemHeight, width);
+                groupEstimatesInvalidated = true;
+            }
+        }
+
+        private void addMeasuredSamples()
+        {
+            for (int i = 0; i < itemMetadata.getCount(); i++)
+            {
+                if (itemMetadata.isMeasured(i))
+                {
+                    int viewType = getStoredViewType(i);
+                    widthEstimator.addMeasuredSize(viewType >= 0 ? viewType : UniSizeEstimator.ALL_VIEW_TYPES, itemHeight, itemMetadata.getWidth(i));
+                }
+            }
+            groupEstimatesInvalidated = true;
+        }
+
+        private void updateStoredViewTypes(int itemPosition, int itemCount)
+        {
+            // A changed item can have another view type, unmeasured items are estimated by it so the index needs to know
+            int toPosition = Math.min(itemPosition + itemCount, itemMetadata.getCount());
+            for (int i = Math.max(0, itemPosition); i < toPosition; i++)
+            {
+                int viewType = getReusableViewType(i);
+                if (viewType != itemMetadata.getViewType(i))
+                {
+                    itemMetadata.setViewType(i, viewType);
+                    if (!offsetIndexInvalidated)
+                    {
+                        offsetIndex.setViewType(i, viewType);
+                    }
+                }
+            }
+        }
+
+        private void measureWindowItem(int position, int heightMeasureSpec)
+        {
+            // Skip measuring when the view already has the size of the same content at the same height
+            UsingView usingView = usingViews.get(position - usingViewStartPosition);
+            boolean sameContent = usingView.boundVersion == measureCache.getVersion(position) && measureCache.isCached(position);
+            if (!sameContent || usingView.measureSpec != heightMeasureSpec || usingView.view.isLayoutRequested())
+            {
+                usingView.view.measure(MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED), heightMeasureSpec);
+                usingView.measureSpec = heightMeasureSpec;
+                setLastMeasuredSize(position, usingView.view.getMeasuredWidth(), usingView.view.getMeasuredHeight());
+            }
+        }
+
+        private void applyCachedSizes()
+        {
+            // After a height change, use the sizes measured earlier for this height, other items are estimated until measured
+            int count = itemMetadata.getCount();
+            for (int i = 0; i < count; i++)
+            {
+                if (measureCache.isCached(i))
+                {
+                    itemMetadata.setMeasuredSize(i, measureCache.getWidth(i), measureCache.getHeight(i));
+                }
+                else
+                {
+                    itemMetadata.clearMeasuredSize(i);
+                }
+            }
+            offsetIndexInvalidated = true;
+        }
+
+        private int getEstimatedWidth(int position)
+        {
+            // Unmeasured items use the estimate of their view type, the same one as the offset index, otherwise their position in the window wouldn't match the index
+            if (itemMetadata.isMeasured(position))
+            {
+                return itemMetadata.getWidth(position);
+            }
+            return getGroupWidths()[UniOffsetIndex.getEstimateGroup(getStoredViewType(position))];
+        }
+
+        private int getAverageWidth(int viewType)
+        {
+            int estimate = widthEstimator.estimateSize(viewType >= 0 ? viewType : UniSizeEstimator.ALL_VIEW_TYPES, itemHeight);
+            if (estimate != UniSizeEstimator.NO_ESTIMATE)
+            {
+                return estimate;
+            }
+            return (int)getResources().getDisplayMetrics().density * 50;
+        }
+
+        private int[] getGroupWidths()
+        {
+            // Layout asks for estimates of many items, the estimate of each view type is kept until the estimator receives samples or the height changes
+            if (groupEstimatesInvalidated || groupEstimatesHeight != itemHeight)
+            {
+                for (int group = 0; group < groupWidths.length; group++)
+                {
+                    groupWidths[group] = getAverageWidth(group == UniOffsetIndex.DEFAULT_ESTIMATE_GROUP ? UniReusingContainer.UNDEFINED_VIEW_TYPE : group - 1);
+                }
+                groupEstimatesInvalidated = false;
+                groupEstimatesHeight = itemHeight;
+            }
+            return groupWidths;
+        }
+
+        private UniOffsetIndex getOffsetIndex()
+        {
+            // Range changes only invalidate the index, it's rebuilt once when needed, the index counts unmeasured items per view type so new items need to ask the adapter
+            if (offsetIndexInvalidated)
+            {
+                for (int i = 0; i < itemMetadata.getCount(); i++)
+                {
+                    if (itemMetadata.getViewType(i) == UniItemMetadataStore.NO_VIEW_TYPE)
+                    {
+                        itemMetadata.setViewType(i, getReusableViewType(i));
+                    }
+                }
+                offsetIndex.rebuild(itemMetadata, true);
+                offsetIndexInvalidated = false;
+            }
+            return offsetIndex;
+        }
+
+        private int getStoredWidth(int fromPosition, int toPosition)
+        {
+            int[] estimates = getGroupWidths();
+            int width = 0;
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                width += itemMetadata.isMeasured(i) ? itemMetadata.getWidth(i) : estimates[UniOffsetIndex.getEstimateGroup(getStoredViewType(i))];
+            }
+            return width;
+        }
+
+        private int getItemX(int position)
+        {
+            // Items are placed relative to the window, which may not be exactly at the offset in the index
+            int[] estimates = getGroupWidths();
+            return usingViewStartX + getOffsetIndex().getOffset(position, estimates) - getOffsetIndex().getOffset(usingViewStartPosition, estimates);
+        }
+
+        private int getWindowItemX(int index)
+        {
+            int x = usingViewStartX;
+            for (int i = 0; i < index; i++)
+            {
+                x += getEstimatedWidth(usingViewStartPosition + i);
+            }
+            return x;
+        }
+
+        private int getPositionAtX(int x)
+        {
+            return getOffsetIndex().getPositionAtOffset(x - getItemX(0), getGroupWidths());
+        }
+
+
+        // ---
+        // Scrolling to positions
+        // ---
+
+        public void setScrollAnchor(int position, float location)
+        {
+            anchorPosition = position;
+            anchorLocation = location;
+            requestLayout();
+        }
+
+        private void applyScrollAnchor(int paddedWidthSize, int itemHeightSpec)
+        {
+            // Start a new window at the anchor item, placed by the offset index, and scroll so it lands at the requested location
+            int position = Math.min(anchorPosition, getReusableViewCount() - 1);
+            anchorPosition = -1;
+            if (position < 0)
+            {
+                return;
+            }
+            usingViewStartX = getItemX(position);
+            usingViewStartPosition = position;
+            recycleUsingViews();
+            UniReusableView reusableView = allocateReusableView(position);
+            int width = getEstimatedWidth(position);
+            if (reusableView != null)
+            {
+                measureWindowItem(position, itemHeightSpec);
+                width = reusableView.getMeasuredWidth();
+            }
+            offsetX = Math.max(0, usingViewStartX - (int)(anchorLocation * (paddedWidthSize - width)));
+            pendingScrollX = offsetX;
+            pendingScrollCorrection = 0;
+        }
+
+
+        // ---
+        // Reusable view creation
+        // ---
+
+        public void setOffsetX(int offsetX)
+        {
+            // Request a new layout pass if items are about to enter view (ignore views going to exit for performance)
+            int startX = Math.max(getPaddingLeft(), getPaddingLeft() + offsetX - extraMarginX);
+            int endX = getPaddingLeft() + offsetX + ((View)getParent()).getWidth() + extraMarginX;
+            int endItemX = getWindowItemX(usingViews.size());
+            if (startX < usingViewStartX || endX > endItemX)
+            {
+                requestLayout();
+            }
+            this.offsetX = offsetX;
+        }
+
+        public UniReusableView getReusableView(int position)
+        {
+            UsingView usingView = position >= usingViewStartPosition && position < usingViewStartPosition + usingViews.size() ? usingViews.get(position - usingViewStartPosition) : null;
+            return usingView != null ? usingView.view : null;
+        }
+
+        private UniReusableView allocateReusableView(int position)
+        {
+            // Start a new window if the position isn't next to it, instead of filling the gap
+            if (position < usingViewStartPosition - 1 || position > usingViewStartPosition + usingViews.size())
+            {
+                usingViewStartX = getItemX(position);
+                usingViewStartPosition = position;
+                recycleUsingViews();
+            }
+
+            // Expand the window if there is no item for the position
+            if (position == usingViewStartPosition - 1)
+            {
+                usingViews.addFirst(null);
+                usingViewStartPosition = position;
+            }
+            else if (position == usingViewStartPosition + usingViews.size())
+            {
+                usingViews.addLast(null);
+            }
+
+            // Clear the view taking up the given position if it has a different view type
+            int viewType = getReusableViewType(position);
+            UsingView usingView = usingViews.get(position - usingViewStartPosition);
+            if (usingView != null && usingView.viewType != viewType)
+            {
+                recycleUsingView(usingView);
+                usingView = null;
+            }
+
+            // If not found, take one from the recycle pool (preferably still showing this item) or create a new view
+            if (usingView == null)
+            {
+                matchBoundVersion = measureCache.getVersion(position);
+                usingView = recyclePool.take(viewType, boundVersionMatcher);
+                if (usingView == null)
+                {
+                    usingView = createUsingView(viewType);
+                }
+                addView(usingView.view);
+                usingViews.set(position - usingViewStartPosition, usingView);
+            }
+
+            // Populate (unless the view still shows the same content) and return result
+            UniReusableView reusableView = usingView.view;
+            reusableView.setItemPosition(position);
+            int version = measureCache.getVersion(position);
+            if (usingView.boundVersion != version)
+            {
+                if (adapter != null)
+                {
+                    adapter.onUpdateView(reusableView, reusableView.getItemView(), viewType, position);
+                    adapter.onUpdateUnderView(reusableView, reusableView.getUnderView(), viewType, position);
+                    if (adapter.hasContentVersions())
+                    {
+                        measureCache.setContentVersion(position, adapter.getItemContentVersion(position));
+                    }
+                }
+                usingView.boundVersion = version;
+                usingView.measureSpec = UniMeasureCache.NO_WIDTH;
+            }
+            reusableView.setSelected(isItemSelected(position), false);
+            reusableView.setEnabled(isItemEnabled(position), false);
+            return reusableView;
+        }
+
+        private UsingView createUsingView(int viewType)
+        {
+            UsingView usingView = new UsingView();
+            UniReusableView reusableView = new UniReusableView(getContext());
+            reusableView.setLayoutParams(new FrameLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            if (adapter != null)
+            {
+                reusableView.setItemView(adapter.onCreateView(reusableView, viewType));
+                reusableView.setUnderView(adapter.onCreateUnderView(reusableView, viewType));
+            }
+            if (reusableView.getItemContainerView() != null)
+            {
+                reusableView.getItemContainerView().setOnClickListener(new OnClickListener()
+                {
+                    @Override
+                    public void onClick(View view)
+                    {
+                        if (view != null && view.getParent() instanceof UniReusableView)
+                        {
+                            onReusableViewClick((UniReusableView)view.getParent());
+                        }
+                    }
+                });
+            }
+            usingView.view = reusableView;
+            usingView.viewType = viewType;
+            recyclePool.countCreated(viewType, false);
+            return usingView;
+        }
+
+        private void insertIntoWindow(int itemPosition, int itemCount)
+        {
+            int index = itemPosition - usingViewStartPosition;
+            if (index < 0 || (index == 0 && offsetX > 0))
+            {
+                // Inserted before the window, move it along and keep the visible items in place by scrolling along (unless scrolled to the start)
+                int insertedWidth = getStoredWidth(itemPosition, itemPosition + itemCount);
+                usingViewStartPosition += itemCount;
+                usingViewStartX += insertedWidth;
+                offsetX += insertedWidth;
+                pendingScrollCorrection += insertedWidth;
+            }
+            else if (index < usingViews.size())
+            {
+                // Inserted inside the window, make room for the new items
+                for (int i = 0; i < itemCount; i++)
+                {
+                    usingViews.add(index, null);
+                }
+            }
+            updateWindowPositions();
+        }
+
+        private void removeFromWindow(int itemPosition, int itemCount)
+        {
+            // Recycle the views of removed items inside the window
+            int endPosition = itemPosition + itemCount;
+            int fromPosition = Math.max(itemPosition, usingViewStartPosition);
+            int toPosition = Math.min(endPosition, usingViewStartPosition + usingViews.size());
+            for (int i = toPosition - 1; i >= fromPosition; i--)
+            {
+                recycleUsingView(usingViews.remove(i - usingViewStartPosition));
+            }
+
+            // Move the window back for items removed before it, keep the visible items in place by scrolling along
+            if (itemPosition < usingViewStartPosition)
+            {
+                int removedCount = Math.min(endPosition, usingViewStartPosition) - itemPosition;
+                int removedWidth = getStoredWidth(itemPosition, itemPosition + removedCount);
+                usingViewStartPosition -= removedCount;
+                usingViewStartX -= removedWidth;
+                offsetX -= removedWidth;
+                pendingScrollCorrection -= removedWidth;
+            }
+            updateWindowPositions();
+        }
+
+        private void updateWindowPositions()
+        {
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                UsingView usingView = usingViews.get(i);
+                if (usingView != null)
+                {
+                    usingView.view.setItemPosition(usingViewStartPosition + i);
+                }
+            }
+        }
+
+        private void recycleUsingView(UsingView usingView)
+        {
+            if (usingView != null)
+            {
+                usingView.view.setItemPosition(-1);
+                removeView(usingView.view);
+                recyclePool.put(usingView.viewType, usingView);
+            }
+        }
+
+        private void recycleUsingViews()
+        {
+            for (UsingView usingView : usingViews)
+            {
+                recycleUsingView(usingView);
+            }
+            usingViews.clear();
+        }
+
+        private void onReusableViewClick(UniReusableView view)
+        {
+            if (adapter != null && view.getParent() == this)
+            {
+                int position = view.getItemPosition();
+                if (position >= 0 && isItemEnabled(position))
+                {
+                    adapter.setItemSelected(position, !isItemSelected(position));
+                }
+            }
+        }
+
+
+        // ---
+        // Custom layout
+        // ---
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+        {
+            // Determine available size without padding
+            int widthSpec = MeasureSpec.getMode(widthMeasureSpec);
+            int heightSpec = MeasureSpec.getMode(heightMeasureSpec);
+            int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+            int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+            int paddedWidthSize = widthSize - getPaddingLeft() - getPaddingRight();
+            int paddedHeightSize = heightSize - getPaddingTop() - getPaddingBottom();
+            measuredSize.x = getPaddingLeft();
+            measuredSize.y = getPaddingTop();
+            if (heightSpec == MeasureSpec.UNSPECIFIED) // Only do this for height, the width size will be needed for optimization reasons
+            {
+                paddedHeightSize = 0xFFFFFF;
+            }
+
+            // Use sizes measured earlier for the same height, then jump to a requested position
+            int childHeightSpec = heightSpec == MeasureSpec.EXACTLY ? MeasureSpec.EXACTLY : MeasureSpec.AT_MOST;
+            int itemHeightSpec = MeasureSpec.makeMeasureSpec(paddedHeightSize, childHeightSpec);
+            itemHeight = paddedHeightSize;
+            if (measureCache.setActiveWidth(itemHeightSpec))
+            {
+                applyCachedSizes();
+            }
+            if (anchorPosition >= 0)
+            {
+                applyScrollAnchor(paddedWidthSize, itemHeightSpec);
+            }
+
+            // Obtain invalidated or empty items, re-measure items which requested it or were measured for a different height
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                UsingView usingView = usingViews.get(i);
+                if (usingView == null || usingView.invalidated)
+                {
+                    allocateReusableView(usingViewStartPosition + i);
+                    measureWindowItem(usingViewStartPosition + i, itemHeightSpec);
+                    usingViews.get(i).invalidated = false;
+                }
+                else if (usingView.view.isLayoutRequested() || usingView.measureSpec != itemHeightSpec)
+                {
+                    measureWindowItem(usingViewStartPosition + i, itemHeightSpec);
+                }
+            }
+
+            // Determine range and remove items falling out of view
+            int startX = Math.max(getPaddingLeft(), getPaddingLeft() + offsetX - extraMarginX);
+            int endX = getPaddingLeft() + offsetX + paddedWidthSize + extraMarginX;
+            int endItemX = getWindowItemX(usingViews.size());
+            while (usingViews.size() > 0 && usingViewStartX + getEstimatedWidth(usingViewStartPosition) < startX)
+            {
+                recycleUsingView(usingViews.removeFirst());
+                usingViewStartX += getEstimatedWidth(usingViewStartPosition);
+                usingViewStartPosition++;
+            }
+            while (usingViews.size() > 0 && endItemX - getEstimatedWidth(usingViewStartPosition + usingViews.size() - 1) >= endX)
+            {
+                endItemX -= getEstimatedWidth(usingViewStartPosition + usingViews.size() - 1);
+                recycleUsingView(usingViews.removeLast());
+            }
+
+            // Add items moving into view
+            int scrollCorrection = 0;
+            for (int i = usingViewStartPosition + usingViews.size(); i < getReusableViewCount() && endItemX < endX; i++)
+            {
+                UniReusableView reusableView = allocateReusableView(i);
+                measureWindowItem(i, itemHeightSpec);
+                endItemX += reusableView.getMeasuredWidth();
+            }
+            for (int i = usingViewStartPosition - 1; i >= 0; i--)
+            {
+                if (usingViewStartX + getEstimatedWidth(usingViewStartPosition) + scrollCorrection <= startX)
+                {
+                    break;
+                }
+                int previousWidth = getEstimatedWidth(i);
+                UniReusableView reusableView = allocateReusableView(i);
+                measureWindowItem(i, itemHeightSpec);
+                scrollCorrection += reusableView.getMeasuredWidth() - previousWidth;
+                usingViewStartX -= reusableView.getMeasuredWidth();
+            }
+
+            // Apply scroll correction (if needed), when jumping to an anchor it's part of the scroll position applied after layout
+            if (scrollCorrection != 0)
+            {
+                usingViewStartX += scrollCorrection;
+                if (pendingScrollX >= 0)
+                {
+                    offsetX += scrollCorrection;
+                    pendingScrollX = offsetX;
+                }
+                else
+                {
+                    HorizontalScrollView parent = (HorizontalScrollView)getParent();
+                    parent.scrollTo(parent.getScrollX() + scrollCorrection, parent.getScrollY());
+                }
+            }
+
+            // Use sizes calculated earlier for container measurement, unmeasured items use the estimate of their view type
+            measuredSize.x += getOffsetIndex().getTotalSize(getGroupWidths());
+            measuredSize.y += getOffsetIndex().getMaxCrossSize();
+
+            // Adjust final measure with padding and limitations
+            measuredSize.x += getPaddingRight();
+            measuredSize.y += getPaddingBottom();
+            if (heightSpec == MeasureSpec.EXACTLY)
+            {
+                measuredSize.y = heightSize;
+            }
+            else if (heightSpec == MeasureSpec.AT_MOST)
+            {
+                measuredSize.y = Math.min(measuredSize.y, heightSize);
+            }
+            if (widthSpec == MeasureSpec.EXACTLY)
+            {
+                measuredSize.x = widthSize;
+            }
+            setMeasuredDimension(measuredSize.x, measuredSize.y);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom)
+        {
+            int x = usingViewStartX;
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                UsingView usingView = usingViews.get(i);
+                if (usingView != null)
+                {
+                    usingView.view.layout(x, getPaddingTop(), x + usingView.view.getMeasuredWidth(), getPaddingTop() + usingView.view.getMeasuredHeight());
+                }
+                x += getEstimatedWidth(usingViewStartPosition + i);
+            }
+        }
+    }
+
+
+    // ---
+    // A view type utility
+    // ---
+
+    private static class UsingView
+    {
+        private int viewType;
+        private int boundVersion;
+        private int measureSpec = UniMeasureCache.NO_WIDTH;
+        private UniReusableView view;
+        private boolean invalidated;
+    }
+}
@@ -1,9 +1,13 @@
 package com.crescentflare.unilayout.containers;
 
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Point;
 import android.os.Build;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.SystemClock;
 import android.support.v4.view.MotionEventCompat;
 import android.support.v4.view.ViewConfigurationCompat;
@@ -14,12 +18,24 @@ import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
+import android.widget.OverScroller;
 import android.widget.ScrollView;
 
+import com.crescentflare.unilayout.helpers.UniBitSet;
+import com.crescentflare.unilayout.helpers.UniFastScroller;
+import com.crescentflare.unilayout.helpers.UniItemMetadataStore;
+import com.crescentflare.unilayout.helpers.UniMeasureCache;
+import com.crescentflare.unilayout.helpers.UniOffsetIndex;
+import com.crescentflare.unilayout.helpers.UniQuantileSizeEstimator;
+import com.crescentflare.unilayout.helpers.UniRecyclePool;
+import com.crescentflare.unilayout.helpers.UniRingBuffer;
 import com.crescentflare.unilayout.helpers.UniScrollListener;
+import com.crescentflare.unilayout.helpers.UniSizeEstimator;
+import com.crescentflare.unilayout.helpers.UniViewTypeRegistry;
 import com.crescentflare.unilayout.views.UniReusableView;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -30,12 +46,31 @@ import java.util.Map;
  */
 public class UniReusingContainer extends ScrollView
 {
+    // ---
+    // Constants
+    // ---
+
+    public static final int UNDEFINED_VIEW_TYPE = -1;
+    public static final int LAYOUT_LIST = 0;
+    public static final int LAYOUT_GRID = 1;
+    public static final int LAYOUT_STAGGERED = 2;
+    private static final int DEFAULT_RECYCLE_LIMIT = 32;
+    private static final int DEFAULT_IDLE_MEASURE_BUDGET = 4;
+    private static final int IDLE_MEASURE_SCROLL_DELAY = 150;
+    private static final int FLING_LOOKAHEAD_FACTOR = 3;
+    private static final int MEASURE_CACHE_WIDTHS = 2;
+    private static final int DEFAULT_PLACEHOLDER_COLOR = 0x0C000000;
+
+
     // ---
     // Members
     // ---
 
+    private UniRecyclePool<UsingView> recyclePool = new UniRecyclePool<>(DEFAULT_RECYCLE_LIMIT);
     private LayoutContainer contentView;
     private UniScrollListener scrollListener;
+    private OverScroller flingPredictor;
+    private UniFastScroller fastScroller;
     private DragState dragState = DragState.Idle;
     private VelocityTracker velocityTracker;
     private int draggingPosition = -1;
@@ -46,7 +81,17 @@ public class UniReusingContainer extends ScrollView
     private int longPressTimeout;
     private float startDragX;
     private float startDragY;
+    private int idleMeasureBudget = DEFAULT_IDLE_MEASURE_BUDGET;
+    private int bindFrameBudget;
+    private int placeholderColor = DEFAULT_PLACEHOLDER_COLOR;
+    private int layoutMode = LAYOUT_LIST;
+    private int columnCount = 1;
+    private UniSizeEstimator heightEstimator = new UniQuantileSizeEstimator();
     private boolean multiSelect;
+    private boolean idleMeasure;
+    private boolean flingPrediction = true;
+    private boolean anchoredLayout;
+    private boolean stickyHeaders;
 
 
     // ---
@@ -104,6 +149,7 @@ public class UniReusingContainer extends ScrollView
         {
             removeView(contentView);
             contentView = null;
+            recyclePool.clear();
         }
 
         // Add the content view if setting an adapter
@@ -113,33 +159,67 @@ public class UniReusingContainer extends ScrollView
             contentView = new LayoutContainer(getContext());
             contentView.setLayoutParams(new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
             addView(contentView);
+            contentView.setRecyclePool(recyclePool);
             contentView.setAdapter(adapter);
             contentView.setMultiSelect(multiSelect);
+            contentView.setIdleMeasure(idleMeasure, idleMeasureBudget);
+            contentView.setAnchoredLayout(anchoredLayout);
+            contentView.setBindFrameBudget(bindFrameBudget);
+            contentView.setPlaceholderColor(placeholderColor);
+            contentView.setHeightEstimator(heightEstimator);
+            contentView.setStickyHeaders(stickyHeaders);
+            contentView.setLayoutMode(layoutMode, columnCount);
             newCreated = true;
         }
 
-        // Refresh if needed
+        // Refresh if needed, view type ids belong to the adapter so recycled views can't be reused by another one
         if (contentView != null && (contentView.adapter != adapter || newCreated))
         {
-            contentView.refreshCalculation();
+            boolean adapterChanged = contentView.adapter != adapter;
+            contentView.setAdapter(adapter);
+            contentView.refreshCalculation(false);
+            if (adapterChanged)
+            {
+                recyclePool.clear();
+            }
             requestLayout();
         }
     }
 
     public int getAdapterPosition(UniReusableView view)
     {
-        int index = 0;
-        for (UsingView usingView : contentView.usingViews)
+        if (contentView != null && view != null && view.getParent() == contentView)
         {
-            if (usingView.view == view)
-            {
-                return contentView.usingViewStartPosition + index;
-            }
-            index++;
+            return view.getItemPosition();
         }
         return -1;
     }
 
+    public int getPositionAtY(int y)
+    {
+        // The position of the item at the given y coordinate of this view, or -1 if there is no item
+        if (contentView == null || contentView.getReusableViewCount() == 0)
+        {
+            return -1;
+        }
+        int contentY = y + getScrollY() - contentView.getTop();
+        if (contentY < contentView.getItemY(0) || contentY >= contentView.getItemY(contentView.getReusableViewCount()))
+        {
+            return -1;
+        }
+        return contentView.getPositionAtY(contentY);
+    }
+
+    public long getItemMetadataMemoryUsage()
+    {
+        return contentView != null ? contentView.itemMetadata.getMemoryUsage() : 0;
+    }
+
+    public float getItemMetadataMemoryUsagePerItem()
+    {
+        return contentView != null ? contentView.itemMetadata.getMemoryUsagePerItem() : 0;
+    }
+
     public void setMultiSelect(boolean enabled)
     {
         multiSelect = enabled;
@@ -155,6 +235,218 @@ public class UniReusingContainer extends ScrollView
     }
 
 
+    // ---
+    // Anchored layout
+    // ---
+
+    public void setAnchoredLayoutEnabled(boolean enabled)
+    {
+        anchoredLayout = enabled;
+        if (contentView != null)
+        {
+            contentView.setAnchoredLayout(anchoredLayout);
+        }
+    }
+
+    public boolean isAnchoredLayoutEnabled()
+    {
+        return anchoredLayout;
+    }
+
+    public int getLastFrameCorrectionCount()
+    {
+        return contentView != null ? contentView.lastFrameCorrectionPasses : 0;
+    }
+
+    public int getMaxFrameCorrectionCount()
+    {
+        return contentView != null ? contentView.maxFrameCorrectionPasses : 0;
+    }
+
+
+    // ---
+    // Measure items while idle
+    // ---
+
+    public void setIdleMeasureEnabled(boolean enabled)
+    {
+        idleMeasure = enabled;
+        if (contentView != null)
+        {
+            contentView.setIdleMeasure(idleMeasure, idleMeasureBudget);
+        }
+    }
+
+    public boolean isIdleMeasureEnabled()
+    {
+        return idleMeasure;
+    }
+
+    public void setIdleMeasureBudget(int milliseconds)
+    {
+        idleMeasureBudget = Math.max(1, milliseconds);
+        if (contentView != null)
+        {
+            contentView.setIdleMeasure(idleMeasure, idleMeasureBudget);
+        }
+    }
+
+    public int getIdleMeasureBudget()
+    {
+        return idleMeasureBudget;
+    }
+
+
+    // ---
+    // Height estimation
+    // ---
+
+    public void setHeightEstimator(UniSizeEstimator heightEstimator)
+    {
+        this.heightEstimator = heightEstimator != null ? heightEstimator : new UniQuantileSizeEstimator();
+        if (contentView != null)
+        {
+            contentView.setHeightEstimator(this.heightEstimator);
+        }
+    }
+
+    public UniSizeEstimator getHeightEstimator()
+    {
+        return heightEstimator;
+    }
+
+    public float getHeightEstimationError()
+    {
+        // The average difference in pixels between the estimated and measured height of items measured for the first time
+        return contentView != null ? contentView.getEstimationError() : 0;
+    }
+
+
+    // ---
+    // Time-sliced binding
+    // ---
+
+    public void setBindFrameBudget(int milliseconds)
+    {
+        // Zero disables slicing, all items entering the view are bound within the same frame
+        bindFrameBudget = Math.max(0, milliseconds);
+        if (contentView != null)
+        {
+            contentView.setBindFrameBudget(bindFrameBudget);
+        }
+    }
+
+    public int getBindFrameBudget()
+    {
+        return bindFrameBudget;
+    }
+
+    public void setPlaceholderColor(int color)
+    {
+        placeholderColor = color;
+        if (contentView != null)
+        {
+            contentView.setPlaceholderColor(placeholderColor);
+        }
+    }
+
+    public int getPlaceholderColor()
+    {
+        return placeholderColor;
+    }
+
+
+    // ---
+    // Recycling limits
+    // ---
+
+    public void setDefaultRecycleLimit(int limit)
+    {
+        recyclePool.setDefaultLimit(limit);
+    }
+
+    public int getDefaultRecycleLimit()
+    {
+        return recyclePool.getDefaultLimit();
+    }
+
+    public void setRecycleLimit(int viewTypeId, int limit)
+    {
+        recyclePool.setLimit(viewTypeId, limit);
+    }
+
+    public void setRecycleLimit(String viewType, int limit)
+    {
+        setRecycleLimit(getViewTypeId(viewType), limit);
+    }
+
+    public int getRecycleLimit(int viewTypeId)
+    {
+        return recyclePool.getLimit(viewTypeId);
+    }
+
+    public int getRecycleLimit(String viewType)
+    {
+        return getRecycleLimit(getViewTypeId(viewType));
+    }
+
+
+    // ---
+    // Prefetch reusable views while idle
+    // ---
+
+    public void setPrefetchCount(int viewTypeId, int count)
+    {
+        recyclePool.setPrefetchCount(viewTypeId, count);
+        if (contentView != null)
+        {
+            contentView.scheduleIdleWork();
+        }
+    }
+
+    public void setPrefetchCount(String viewType, int count)
+    {
+        setPrefetchCount(getViewTypeId(viewType), count);
+    }
+
+    public int getPrefetchCount(int viewTypeId)
+    {
+        return recyclePool.getPrefetchCount(viewTypeId);
+    }
+
+    public int getPrefetchCount(String viewType)
+    {
+        return getPrefetchCount(getViewTypeId(viewType));
+    }
+
+    public int getPrefetchedViewCount(int viewTypeId)
+    {
+        return recyclePool.getCreatedAheadCount(viewTypeId);
+    }
+
+    public int getPrefetchedViewCount(String viewType)
+    {
+        return getPrefetchedViewCount(getViewTypeId(viewType));
+    }
+
+    public int getOnDemandViewCount(int viewTypeId)
+    {
+        return recyclePool.getCreatedOnDemandCount(viewTypeId);
+    }
+
+    public int getOnDemandViewCount(String viewType)
+    {
+        return getOnDemandViewCount(getViewTypeId(viewType));
+    }
+
+    private int getViewTypeId(String viewType)
+    {
+        // View type names belong to the adapter, set a named adapter before using them
+        Adapter adapter = getAdapter();
+        return adapter instanceof NamedAdapter ? ((NamedAdapter)adapter).getViewTypeId(viewType) : UNDEFINED_VIEW_TYPE;
+    }
+
+
     // ---
     // Scroll handling
     // ---
@@ -179,6 +471,38 @@ public class UniReusingContainer extends ScrollView
         touchCounter++;
     }
 
+    @Override
+    public void fling(int velocityY)
+    {
+        // Predict where the fling lands with the same scroller physics, to prepare the items visible there
+        super.fling(velocityY);
+        if (flingPrediction && contentView != null && getChildCount() > 0)
+        {
+            if (flingPredictor == null)
+            {
+                flingPredictor = new OverScroller(getContext());
+            }
+            int scrollRange = Math.max(0, contentView.getHeight() - (getHeight() - getPaddingTop() - getPaddingBottom()));
+            flingPredictor.fling(getScrollX(), getScrollY(), 0, velocityY, 0, 0, 0, scrollRange);
+            contentView.startFlingPrediction(flingPredictor.getFinalY(), velocityY > 0 ? 1 : -1);
+            flingPredictor.forceFinished(true);
+        }
+    }
+
+    public void setFlingPredictionEnabled(boolean enabled)
+    {
+        flingPrediction = enabled;
+        if (!enabled && contentView != null)
+        {
+            contentView.endFlingPrediction();
+        }
+    }
+
+    public boolean isFlingPredictionEnabled()
+    {
+        return flingPrediction;
+    }
+
     public void scrollToPosition(int itemPosition)
     {
         scrollToPosition(itemPosition, 0.5f);
@@ -186,11 +510,11 @@ public class UniReusingContainer extends ScrollView
 
     public void scrollToPosition(int itemPosition, float locationInView)
     {
-        if (getHeight() > 0 && getWidth() > 0 && contentView.getReusableViewCount() > 0)
+        // Jump to the item in the next layout pass, the items around it are laid out from there
+        if (contentView != null && contentView.getReusableViewCount() > 0)
         {
-            int scrollAreaHeight = Math.max(0, getHeight() - getPaddingTop() - getPaddingBottom());
             int toPosition = Math.max(0, Math.min(itemPosition, contentView.getReusableViewCount() - 1));
-            scrollTo(0, contentView.getReusableViewY(toPosition) - (int)(locationInView * (scrollAreaHeight - contentView.getEstimatedHeight(toPosition))));
+            contentView.setScrollAnchor(toPosition, locationInView);
         }
     }
 
@@ -201,74 +525,263 @@ public class UniReusingContainer extends ScrollView
 
     public void smoothScrollToPosition(int itemPosition, float locationInView)
     {
-        if (getHeight() > 0 && getWidth() > 0 && contentView.getReusableViewCount() > 0)
+        // Scroll to the estimated location, it's corrected once the item is laid out
+        if (contentView != null && getHeight() > 0 && getWidth() > 0 && contentView.getReusableViewCount() > 0)
         {
             int scrollAreaHeight = Math.max(0, getHeight() - getPaddingTop() - getPaddingBottom());
             int toPosition = Math.max(0, Math.min(itemPosition, contentView.getReusableViewCount() - 1));
-            smoothScrollTo(0, contentView.getReusableViewY(toPosition) - (int)(locationInView * (scrollAreaHeight - contentView.getEstimatedHeight(toPosition))));
+            smoothScrollTo(0, contentView.setSmoothScrollAnchor(toPosition, locationInView, scrollAreaHeight));
         }
     }
 
 
     // ---
-    // Touch and swipe handling
+    // Grid layouts
     // ---
 
-    @Override
-    public boolean onInterceptTouchEvent(MotionEvent event)
+    public void setLayoutMode(int layoutMode)
     {
-        int action = MotionEventCompat.getActionMasked(event);
-        final float x = event.getX();
-        final float y = event.getY();
-        switch (action)
+        // Grids place items in rows of columns, staggered grids add each item to the column which ends highest
+        this.layoutMode = layoutMode;
+        if (contentView != null)
         {
-            case MotionEvent.ACTION_DOWN:
+            contentView.setLayoutMode(layoutMode, columnCount);
+        }
+    }
+
+    public int getLayoutMode()
+    {
+        return layoutMode;
+    }
+
+    public void setColumnCount(int columnCount)
+    {
+        // Only used by the grid layouts, items can take up multiple columns with getItemSpanSize in the adapter
+        this.columnCount = Math.max(1, columnCount);
+        if (contentView != null)
+        {
+            contentView.setLayoutMode(layoutMode, this.columnCount);
+        }
+    }
+
+    public int getColumnCount()
+    {
+        return columnCount;
+    }
+
+
+    // ---
+    // Sticky headers
+    // ---
+
+    public void setStickyHeadersEnabled(boolean enabled)
+    {
+        // Pins the header of the section at the top, items are headers when the adapter says so with isHeaderItem
+        stickyHeaders = enabled;
+        if (contentView != null)
+        {
+            contentView.setStickyHeaders(stickyHeaders);
+        }
+    }
+
+    public boolean isStickyHeadersEnabled()
+    {
+        return stickyHeaders;
+    }
+
+
+    // ---
+    // Fast scrolling
+    // ---
+
+    public void setFastScrollEnabled(boolean enabled)
+    {
+        // Replaces the scroll bar, which depends on the estimated content height
+        if (enabled && fastScroller == null)
+        {
+            fastScroller = new UniFastScroller(getContext(), new UniFastScroller.Callback()
             {
-                int index = 0;
-                dragState = DragState.Idle;
-                startDragX = x;
-                startDragY = y;
-                draggingPosition = -1;
-                for (UsingView usingView : contentView.usingViews)
+                @Override
+                public int getItemCount()
+                {
+                    return contentView != null ? contentView.getReusableViewCount() : 0;
+                }
+
+                @Override
+                public int getVisibleItemCount()
+                {
+                    int scrollAreaHeight = getHeight() - getPaddingTop() - getPaddingBottom();
+                    return contentView != null ? contentView.getPositionAtY(getScrollY() + scrollAreaHeight) - contentView.getPositionAtY(getScrollY()) : 0;
+                }
+
+                @Override
+                public float getVisiblePosition()
                 {
-                    if (usingView.view != null && startDragY + getScrollY() >= usingView.view.getTop() && startDragY + getScrollY() < usingView.view.getBottom())
+                    if (contentView == null)
                     {
-                        if (usingView.view.getUnderView() != null)
-                        {
-                            draggingPosition = index + contentView.usingViewStartPosition;
-                            velocityTracker = VelocityTracker.obtain();
-                            velocityTracker.addMovement(event);
-                        }
-                        break;
+                        return 0;
                     }
-                    index++;
+                    int position = contentView.getPositionAtY(getScrollY());
+                    int height = contentView.getEstimatedHeight(position);
+                    float partial = height > 0 ? (float)(getScrollY() - contentView.getItemY(position)) / height : 0;
+                    return position + Math.max(0, Math.min(1, partial));
                 }
-                touchCounter++;
-                if (draggingPosition >= 0)
+
+                @Override
+                public void onFastScroll(int position)
                 {
-                    final int checkTouchCounter = touchCounter;
-                    new Handler().postDelayed(new Runnable()
-                    {
-                        @Override
-                        public void run()
-                        {
-                            if (checkTouchCounter == touchCounter)
-                            {
-                                if (draggingPosition >= contentView.usingViewStartPosition && draggingPosition < contentView.usingViewStartPosition + contentView.usingViews.size())
-                                {
-                                    MotionEvent cancelMotion = MotionEvent.obtain(SystemClock.uptimeMillis(), SystemClock.uptimeMillis(), MotionEvent.ACTION_CANCEL, x, y, 0);
-                                    dispatchTouchEvent(cancelMotion);
-                                    cancelMotion.recycle();
-                                    if (draggingPosition == getSwipedOpen())
-                                    {
-                                        closeSwipedOpen();
-                                    }
-                                    else
-                                    {
-                                        setSwipedOpen(draggingPosition);
-                                    }
-                                }
-                            }
+                    scrollToPosition(position, 0f);
+                }
+
+                @Override
+                public int getSectionForPosition(int position)
+                {
+                    return getAdapter() != null ? getAdapter().getSectionForPosition(position) : -1;
+                }
+
+                @Override
+                public int getSectionCount()
+                {
+                    return getAdapter() != null ? getAdapter().getSectionCount() : 0;
+                }
+
+                @Override
+                public int getPositionForSection(int section)
+                {
+                    return getAdapter() != null ? getAdapter().getPositionForSection(section) : -1;
+                }
+
+                @Override
+                public String getSectionTitle(int section)
+                {
+                    return getAdapter() != null ? getAdapter().getSectionTitle(section) : null;
+                }
+            });
+        }
+        else if (!enabled)
+        {
+            fastScroller = null;
+        }
+        setVerticalScrollBarEnabled(!enabled);
+        invalidate();
+    }
+
+    public boolean isFastScrollEnabled()
+    {
+        return fastScroller != null;
+    }
+
+    public void setFastScrollColors(int thumbColor, int labelColor, int labelTextColor)
+    {
+        if (fastScroller != null)
+        {
+            fastScroller.setColors(thumbColor, labelColor, labelTextColor);
+            invalidate();
+        }
+    }
+
+    @Override
+    public void draw(Canvas canvas)
+    {
+        super.draw(canvas);
+        if (fastScroller != null && contentView != null)
+        {
+            canvas.save();
+            canvas.translate(getScrollX(), getScrollY());
+            fastScroller.draw(canvas, getWidth(), getHeight());
+            canvas.restore();
+        }
+    }
+
+
+    // ---
+    // Touch and swipe handling
+    // ---
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event)
+    {
+        // Pause measuring items in the background while touching, a touch also stops flinging or smooth scrolling
+        int action = MotionEventCompat.getActionMasked(event);
+        if (contentView != null)
+        {
+            if (action == MotionEvent.ACTION_DOWN)
+            {
+                contentView.setIdleMeasurePaused(true);
+                contentView.endFlingPrediction();
+                contentView.clearSmoothScrollAnchor();
+            }
+            else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)
+            {
+                contentView.setIdleMeasurePaused(false);
+            }
+        }
+
+        // Dragging the fast-scroll thumb takes over the touch, the scroll view only sees the start of it to stop flinging
+        if (fastScroller != null && contentView != null && fastScroller.onTouchEvent(event, getWidth(), getHeight()))
+        {
+            if (action == MotionEvent.ACTION_DOWN)
+            {
+                super.dispatchTouchEvent(event);
+                MotionEvent cancelEvent = MotionEvent.obtain(event);
+                cancelEvent.setAction(MotionEvent.ACTION_CANCEL);
+                super.dispatchTouchEvent(cancelEvent);
+                cancelEvent.recycle();
+            }
+            invalidate();
+            return true;
+        }
+        return super.dispatchTouchEvent(event);
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent event)
+    {
+        int action = MotionEventCompat.getActionMasked(event);
+        final float x = event.getX();
+        final float y = event.getY();
+        switch (action)
+        {
+            case MotionEvent.ACTION_DOWN:
+            {
+                dragState = DragState.Idle;
+                startDragX = x;
+                startDragY = y;
+                draggingPosition = -1;
+                int touchPosition = layoutMode == LAYOUT_LIST ? getPositionAtY((int)y) : -1;
+                UniReusableView touchView = touchPosition >= 0 ? contentView.getReusableView(touchPosition, false) : null;
+                if (touchView != null && touchView.getUnderView() != null && startDragY + getScrollY() >= touchView.getTop() && startDragY + getScrollY() < touchView.getBottom())
+                {
+                    draggingPosition = touchPosition;
+                    velocityTracker = VelocityTracker.obtain();
+                    velocityTracker.addMovement(event);
+                }
+                touchCounter++;
+                if (draggingPosition >= 0)
+                {
+                    final int checkTouchCounter = touchCounter;
+                    new Handler().postDelayed(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            if (checkTouchCounter == touchCounter)
+                            {
+                                if (contentView.getReusableView(draggingPosition, false) != null)
+                                {
+                                    MotionEvent cancelMotion = MotionEvent.obtain(SystemClock.uptimeMillis(), SystemClock.uptimeMillis(), MotionEvent.ACTION_CANCEL, x, y, 0);
+                                    dispatchTouchEvent(cancelMotion);
+                                    cancelMotion.recycle();
+                                    if (draggingPosition == getSwipedOpen())
+                                    {
+                                        closeSwipedOpen();
+                                    }
+                                    else
+                                    {
+                                        setSwipedOpen(draggingPosition);
+                                    }
+                                }
+                            }
                         }
                     }, longPressTimeout);
                 }
@@ -343,17 +856,16 @@ public class UniReusingContainer extends ScrollView
                         velocityTracker.addMovement(event);
                         velocityTracker.computeCurrentVelocity(1000);
                     }
-                    if (draggingPosition >= contentView.usingViewStartPosition && draggingPosition < contentView.usingViewStartPosition + contentView.usingViews.size())
+                    if (contentView.getReusableView(draggingPosition, false) != null)
                     {
-                        int index = draggingPosition - contentView.usingViewStartPosition;
+                        UniReusableView draggingView = contentView.getReusableView(draggingPosition, false);
                         if (draggingPosition == getSwipedOpen())
                         {
-                            int viewWidth = contentView.usingViews.get(index).view.getWidth();
-                            contentView.usingViews.get(index).view.setSwipeTranslationX(-viewWidth + Math.max(0, x - startDragX));
+                            draggingView.setSwipeTranslationX(-draggingView.getWidth() + Math.max(0, x - startDragX));
                         }
                         else
                         {
-                            contentView.usingViews.get(index).view.setSwipeTranslationX(Math.min(0, x - startDragX));
+                            draggingView.setSwipeTranslationX(Math.min(0, x - startDragX));
                         }
                     }
                     break;
@@ -363,16 +875,15 @@ public class UniReusingContainer extends ScrollView
                         velocityTracker.recycle();
                         velocityTracker = null;
                     }
-                    if (draggingPosition >= contentView.usingViewStartPosition && draggingPosition < contentView.usingViewStartPosition + contentView.usingViews.size())
+                    if (contentView.getReusableView(draggingPosition, false) != null)
                     {
-                        int index = draggingPosition - contentView.usingViewStartPosition;
                         if (draggingPosition == getSwipedOpen())
                         {
-                            contentView.usingViews.get(index).view.swipeOpen(true);
+                            contentView.getReusableView(draggingPosition, false).swipeOpen(true);
                         }
                         else
                         {
-                            contentView.usingViews.get(index).view.swipeClose(true);
+                            contentView.getReusableView(draggingPosition, false).swipeClose(true);
                         }
                     }
                     break;
@@ -400,16 +911,15 @@ public class UniReusingContainer extends ScrollView
                     }
                     else
                     {
-                        if (draggingPosition >= contentView.usingViewStartPosition && draggingPosition < contentView.usingViewStartPosition + contentView.usingViews.size())
+                        if (contentView.getReusableView(draggingPosition, false) != null)
                         {
-                            int index = draggingPosition - contentView.usingViewStartPosition;
                             if (draggingPosition == getSwipedOpen())
                             {
-                                contentView.usingViews.get(index).view.swipeOpen(true);
+                                contentView.getReusableView(draggingPosition, false).swipeOpen(true);
                             }
                             else
                             {
-                                contentView.usingViews.get(index).view.swipeClose(true);
+                                contentView.getReusableView(draggingPosition, false).swipeClose(true);
                             }
                         }
                     }
@@ -447,10 +957,9 @@ public class UniReusingContainer extends ScrollView
         }
 
         // Close view that was already open
-        if (getSwipedOpen() >= 0 && getSwipedOpen() >= contentView.usingViewStartPosition && getSwipedOpen() < contentView.usingViewStartPosition + contentView.usingViews.size())
+        if (getSwipedOpen() >= 0 && contentView.getReusableView(getSwipedOpen(), false) != null)
         {
-            int index = getSwipedOpen() - contentView.usingViewStartPosition;
-            contentView.usingViews.get(index).view.swipeClose(true);
+            contentView.getReusableView(getSwipedOpen(), false).swipeClose(true);
         }
         if (getAdapter() != null)
         {
@@ -461,10 +970,9 @@ public class UniReusingContainer extends ScrollView
         if (getAdapter() != null)
         {
             getAdapter().itemSwipedOpen = position;
-            if (getSwipedOpen() >= 0 && getSwipedOpen() >= contentView.usingViewStartPosition && getSwipedOpen() < contentView.usingViewStartPosition + contentView.usingViews.size())
+            if (getSwipedOpen() >= 0 && contentView.getReusableView(getSwipedOpen(), false) != null)
             {
-                int index = getSwipedOpen() - contentView.usingViewStartPosition;
-                contentView.usingViews.get(index).view.swipeOpen(true);
+                contentView.getReusableView(getSwipedOpen(), false).swipeOpen(true);
             }
         }
     }
@@ -602,6 +1110,25 @@ public class UniReusingContainer extends ScrollView
         if (contentView != null)
         {
             contentView.layout(getPaddingLeft(), getPaddingTop(), getPaddingLeft() + contentView.getMeasuredWidth(), getPaddingTop() + contentView.getMeasuredHeight());
+            if (contentView.pendingScrollY >= 0)
+            {
+                int scrollY = contentView.pendingScrollY;
+                contentView.pendingScrollY = -1;
+                contentView.pendingScrollCorrection = 0;
+                scrollTo(getScrollX(), scrollY);
+            }
+            else if (contentView.pendingScrollCorrection != 0)
+            {
+                int scrollCorrection = contentView.pendingScrollCorrection;
+                contentView.pendingScrollCorrection = 0;
+                scrollTo(getScrollX(), getScrollY() + scrollCorrection);
+            }
+            if (contentView.pendingSmoothScrollY >= 0)
+            {
+                int scrollY = contentView.pendingSmoothScrollY;
+                contentView.pendingSmoothScrollY = -1;
+                smoothScrollTo(getScrollX(), scrollY);
+            }
         }
     }
 
@@ -622,25 +1149,89 @@ public class UniReusingContainer extends ScrollView
     // Layout container
     // ---
 
-    private static class LayoutContainer extends ViewGroup implements DataSetChangedListener
+    private static class LayoutContainer extends ViewGroup implements DataSetRangeChangedListener
     {
         // ---
         // Members
         // ---
 
-        private Map<String, ViewType> viewTypes = new HashMap<>();
-        private List<UsingView> usingViews = new ArrayList<>();
-        private List<UsingView> reserveViews = new ArrayList<>();
+        private UniRingBuffer<UsingView> usingViews = new UniRingBuffer<>();
+        private UniRingBuffer<UsingView> preparedViews = new UniRingBuffer<>();
+        private UniRecyclePool<UsingView> recyclePool;
         private Adapter adapter;
         private int offsetY;
-        private int countedHeight;
-        private int countedViews;
+        private UniSizeEstimator heightEstimator = new UniQuantileSizeEstimator();
+        private int estimationErrorTotal;
+        private int estimationErrorCount;
+        private int[] groupHeights = new int[UniOffsetIndex.MAX_ESTIMATE_GROUPS];
+        private int[] groupIndexSizes = new int[UniOffsetIndex.MAX_ESTIMATE_GROUPS];
+        private boolean groupEstimatesInvalidated = true;
+        private int groupEstimatesWidth = -1;
+        private int groupEstimatesColumnCount;
+        private int itemWidth;
+        private int heightHintsWidth = -1;
+        private boolean heightHintsInvalidated;
         private int extraMarginY;
         private int usingViewStartPosition;
         private int usingViewStartY;
+        private int pendingScrollCorrection;
+        private int pendingScrollY = -1;
+        private int pendingSmoothScrollY = -1;
+        private int anchorPosition = -1;
+        private float anchorLocation;
+        private int smoothAnchorPosition = -1;
+        private float smoothAnchorLocation;
+        private int smoothAnchorScrollY;
+        private int correctionPasses;
+        private int lastFrameCorrectionPasses;
+        private int maxFrameCorrectionPasses;
+        private boolean anchoredLayout;
+        private boolean stickyHeaders;
+        private UsingView stickyHeader;
+        private int stickyHeaderPosition = -1;
+        private int stickySection = -1;
+        private int stickySectionHeader = -1;
+        private UniBitSet headerItems = new UniBitSet();
+        private UniBitSet scannedHeaderItems = new UniBitSet();
+        private int itemWidthSpec;
+        private int layoutMode = LAYOUT_LIST;
+        private int columnCount = 1;
+        private int[] laneStarts = new int[1];
+        private int[] laneEnds = new int[1];
+        private int[] itemLanes = new int[0];
+        private int itemLanesEnd;
+        private int preparedStartPosition;
+        private int preparedEndPosition;
+        private int flingTargetY;
+        private int flingDirection;
+        private int idleMeasureBudget = DEFAULT_IDLE_MEASURE_BUDGET;
+        private int bindFrameBudget;
+        private long bindSliceEndTime;
+        private int bindSliceCount;
+        private boolean bindPending;
+        private Paint placeholderPaint;
+        private int idleMeasureForward;
+        private int idleMeasureBackward = Integer.MAX_VALUE;
+        private long lastOffsetChangeTime;
+        private boolean idleMeasure;
+        private boolean idleMeasurePaused;
+        private boolean idleWorkScheduled;
         private Point measuredSize = new Point();
-        private Point[] measuredViews = null;
+        private UniItemMetadataStore itemMetadata = new UniItemMetadataStore();
+        private UniOffsetIndex offsetIndex = new UniOffsetIndex();
+        private UniMeasureCache measureCache = new UniMeasureCache(MEASURE_CACHE_WIDTHS);
+        private boolean offsetIndexInvalidated;
         private boolean multiSelect;
+        private int matchBoundVersion;
+
+        private final UniRecyclePool.Matcher<UsingView> boundVersionMatcher = new UniRecyclePool.Matcher<UsingView>()
+        {
+            @Override
+            public boolean matches(UsingView item)
+            {
+                return item.boundVersion == matchBoundVersion;
+            }
+        };
 
 
         // ---
@@ -678,28 +1269,85 @@ public class UniReusingContainer extends ScrollView
         // Settings
         // ---
 
+        public void setRecyclePool(UniRecyclePool<UsingView> recyclePool)
+        {
+            this.recyclePool = recyclePool;
+        }
+
+        public void setIdleMeasure(boolean enabled, int budget)
+        {
+            idleMeasure = enabled;
+            idleMeasureBudget = budget;
+            scheduleIdleWork();
+        }
+
+        public void setIdleMeasurePaused(boolean paused)
+        {
+            idleMeasurePaused = paused;
+            scheduleIdleWork();
+        }
+
+        public void setAnchoredLayout(boolean anchoredLayout)
+        {
+            this.anchoredLayout = anchoredLayout;
+            requestLayout();
+        }
+
+        public void setHeightEstimator(UniSizeEstimator heightEstimator)
+        {
+            // Start the new estimator with the items measured so far
+            this.heightEstimator = heightEstimator;
+            heightEstimator.reset();
+            addMeasuredSamples();
+            requestLayout();
+        }
+
+        public void setStickyHeaders(boolean stickyHeaders)
+        {
+            this.stickyHeaders = stickyHeaders;
+            setChildrenDrawingOrderEnabled(stickyHeaders);
+            invalidateStickyHeader();
+            updateStickyHeader();
+        }
+
+        public void setLayoutMode(int layoutMode, int columnCount)
+        {
+            // Measured sizes depend on the column width, start over when the layout changes
+            columnCount = layoutMode == LAYOUT_LIST ? 1 : Math.max(1, columnCount);
+            if (this.layoutMode != layoutMode || this.columnCount != columnCount)
+            {
+                this.layoutMode = layoutMode;
+                this.columnCount = columnCount;
+                laneStarts = new int[columnCount];
+                laneEnds = new int[columnCount];
+                refreshCalculation(false);
+                requestLayout();
+            }
+        }
+
+        public void setBindFrameBudget(int budget)
+        {
+            bindFrameBudget = budget;
+            requestLayout();
+        }
+
+        public void setPlaceholderColor(int color)
+        {
+            placeholderPaint = null;
+            if (color != 0)
+            {
+                placeholderPaint = new Paint();
+                placeholderPaint.setColor(color);
+            }
+            invalidate();
+        }
+
         public void setMultiSelect(boolean multiSelect)
         {
             this.multiSelect = multiSelect;
-            if (!multiSelect && adapter != null)
+            if (!multiSelect && adapter != null && adapter.getSelectedCount() > 1)
             {
-                int foundSelections = 0;
-                int count = getReusableViewCount();
-                for (int i = 0; i < count; i++)
-                {
-                    if (isItemSelected(i))
-                    {
-                        foundSelections++;
-                        if (foundSelections > 1)
-                        {
-                            break;
-                        }
-                    }
-                }
-                if (foundSelections > 1)
-                {
-                    adapter.clearSelections();
-                }
+                adapter.clearSelections();
             }
         }
 
@@ -721,631 +1369,3086 @@ public class UniReusingContainer extends ScrollView
         @Override
         public void onDataSetChanged()
         {
-            refreshCalculation();
+            refreshCalculation(true);
             requestLayout();
         }
 
         @Override
         public void onDataItemChanged(int itemPosition)
         {
-            if (itemPosition >= usingViewStartPosition && itemPosition < usingViewStartPosition + usingViews.size())
-            {
-                usingViews.get(itemPosition - usingViewStartPosition).invalidated = true;
-                requestLayout();
-            }
+            // The window can contain empty slots for inserted items which are not bound yet
+            onDataItemRangeChanged(itemPosition, 1);
         }
 
         @Override
         public void onDataItemStateChanged(int itemPosition)
         {
-            if (itemPosition >= usingViewStartPosition && itemPosition < usingViewStartPosition + usingViews.size())
+            // Only update the state of the view, the size doesn't change
+            updateWindowItemState(itemPosition);
+            if (!multiSelect && adapter != null && adapter.getSelectedCount() > 1 && isItemSelected(itemPosition))
             {
-                UsingView usingView = usingViews.get(itemPosition - usingViewStartPosition);
-                if (usingView.view != null)
-                {
-                    usingView.view.setSelected(isItemSelected(itemPosition), true);
-                    usingView.view.setEnabled(isItemEnabled(itemPosition), true);
-                }
-                if (!multiSelect && isItemSelected(itemPosition) && adapter != null)
-                {
-                    int count = getReusableViewCount();
-                    for (int i = 0; i < count; i++)
-                    {
-                        if (i != itemPosition && isItemSelected(i))
-                        {
-                            adapter.setItemSelected(i, false);
-                        }
-                    }
-                }
+                adapter.selectOnly(itemPosition);
             }
         }
 
-        public void refreshCalculation()
+        @Override
+        public void onDataItemRangeStateChanged(int itemPosition, int itemCount)
         {
-            for (UsingView usingView : usingViews)
-            {
-                if (usingView != null && usingView.view != null)
-                {
-                    removeView(usingView.view);
-                }
-            }
-            measuredViews = new Point[getReusableViewCount()];
-            viewTypes.clear();
-            usingViews.clear();
-            countedHeight = 0;
-            countedViews = 0;
-            usingViewStartPosition = 0;
-            usingViewStartY = 0;
+            updateWindowItemStates(itemPosition, itemCount);
+            keepSingleSelection(itemPosition);
         }
 
-        private int getReusableViewCount()
+        private void updateWindowItemStates(int itemPosition, int itemCount)
         {
-            return adapter != null ? adapter.getItemCount() : 0;
+            int fromPosition = Math.max(itemPosition, usingViewStartPosition);
+            int toPosition = Math.min(itemPosition + itemCount, usingViewStartPosition + usingViews.size());
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                updateWindowItemState(i);
+            }
         }
 
-        private String getReusableViewType(int position)
+        private void keepSingleSelection(int itemPosition)
         {
-            return adapter != null ? adapter.getItemViewType(position) : "undefined";
+            if (!multiSelect && adapter != null && adapter.getSelectedCount() > 1)
+            {
+                // Keep the item selected most recently, a batch dispatches the changes in order of position instead
+                int keepPosition = adapter.getLastSelectedPosition();
+                adapter.selectOnly(keepPosition >= 0 ? keepPosition : adapter.getNextSelectedPosition(itemPosition));
+            }
         }
 
-        private boolean isItemSelected(int position)
+        private void updateWindowItemState(int itemPosition)
         {
-            return adapter != null && adapter.isItemSelected(position);
+            if (itemPosition >= usingViewStartPosition && itemPosition < usingViewStartPosition + usingViews.size())
+            {
+                UsingView usingView = usingViews.get(itemPosition - usingViewStartPosition);
+                if (usingView != null && usingView.view != null)
+                {
+                    usingView.view.setSelected(isItemSelected(itemPosition), true);
+                    usingView.view.setEnabled(isItemEnabled(itemPosition), true);
+                }
+            }
+            if (stickyHeader != null && itemPosition == stickyHeaderPosition)
+            {
+                updateReusableViewState(stickyHeader.view, itemPosition);
+            }
         }
 
-        private boolean isItemEnabled(int position)
+        @Override
+        public void onDataItemRangeInserted(int itemPosition, int itemCount)
         {
-            return adapter == null || adapter.isItemEnabled(position);
+            if (applyItemRangeInserted(itemPosition, itemCount))
+            {
+                requestLayout();
+            }
         }
 
-        private void initReusableView(UniReusableView container, String viewType)
+        @Override
+        public void onDataItemRangeRemoved(int itemPosition, int itemCount)
         {
-            if (adapter != null)
+            if (applyItemRangeRemoved(itemPosition, itemCount))
             {
-                container.setItemView(adapter.onCreateView(container, viewType));
-                container.setUnderView(adapter.onCreateUnderView(container, viewType));
+                requestLayout();
             }
-            else
+        }
+
+        @Override
+        public void onDataItemMoved(int fromPosition, int toPosition)
+        {
+            if (applyItemMoved(fromPosition, toPosition))
             {
-                container.setItemView(null);
-                container.setUnderView(null);
+                requestLayout();
             }
         }
 
-        private void updateReusableView(UniReusableView container, String viewType, int position)
+        @Override
+        public void onDataItemRangeChanged(int itemPosition, int itemCount)
         {
-            if (adapter != null)
+            if (applyItemRangeChanged(itemPosition, itemCount))
             {
-                adapter.onUpdateView(container, container.getItemView(), viewType, position);
-                adapter.onUpdateUnderView(container, container.getUnderView(), viewType, position);
-                container.setSelected(isItemSelected(position), false);
-                container.setEnabled(isItemEnabled(position), false);
-                if (position == adapter.itemSwipedOpen)
-                {
-                    container.swipeOpen(false);
-                }
-                else
-                {
-                    container.swipeClose(false);
-                }
+                requestLayout();
             }
         }
 
-
-        // ---
-        // Track size measurement
-        // ---
-
-        public void setLastMeasuredSize(int position, int width, int height)
+        @Override
+        public void onDataBatchApplied(int[] operations, int operationCount, UniBitSet changedItems, UniBitSet stateChangedItems)
         {
-            // Store in last measured array
-            if (position < measuredViews.length)
+            // Apply all updates of the batch, then lay out once
+            boolean layoutNeeded = false;
+            for (int i = 0; i < operationCount; i++)
             {
-                if (measuredViews[position] != null)
+                int first = operations[i * 3 + 1];
+                int second = operations[i * 3 + 2];
+                switch (operations[i * 3])
                 {
-                    measuredViews[position].x = width;
-                    measuredViews[position].y = height;
-                }
-                else
-                {
-                    measuredViews[position] = new Point(width, height);
+                    case Adapter.BATCH_INSERT:
+                        layoutNeeded |= applyItemRangeInserted(first, second);
+                        break;
+                    case Adapter.BATCH_REMOVE:
+                        layoutNeeded |= applyItemRangeRemoved(first, second);
+                        break;
+                    case Adapter.BATCH_MOVE:
+                        layoutNeeded |= applyItemMoved(first, second);
+                        break;
                 }
             }
-
-            // Apply to size averaging (including normalization if sizes get too big)
-            String viewType = getReusableViewType(position);
-            if (viewType != null)
+            for (int start = changedItems.nextSetBit(0); start >= 0; start = changedItems.nextSetBit(start))
             {
-                ViewType adjustViewType = viewTypes.get(viewType);
-                if (adjustViewType == null)
-                {
-                    adjustViewType = new ViewType();
-                    viewTypes.put(viewType, adjustViewType);
-                }
-                adjustViewType.countedViews++;
-                adjustViewType.countedHeight += height;
-                if (adjustViewType.countedHeight > 0x10000000)
-                {
-                    int reduceViews = (adjustViewType.countedViews + 1) / 2;
-                    adjustViewType.countedHeight -= reduceViews * (adjustViewType.countedHeight / adjustViewType.countedViews);
-                    adjustViewType.countedViews -= reduceViews;
-                }
+                int end = changedItems.nextClearBit(start);
+                layoutNeeded |= applyItemRangeChanged(start, end - start);
+                start = end;
+            }
+            int firstStateChanged = stateChangedItems.nextSetBit(0);
+            for (int start = firstStateChanged; start >= 0; start = stateChangedItems.nextSetBit(start))
+            {
+                int end = stateChangedItems.nextClearBit(start);
+                updateWindowItemStates(start, end - start);
+                start = end;
+            }
+            if (firstStateChanged >= 0)
+            {
+                keepSingleSelection(firstStateChanged);
             }
-            countedViews++;
-            countedHeight += height;
-            if (countedHeight > 0x10000000)
+            if (layoutNeeded)
             {
-                int reduceViews = (countedViews + 1) / 2;
-                countedHeight -= reduceViews * (countedHeight / countedViews);
-                countedViews -= reduceViews;
+                requestLayout();
             }
         }
 
-        public int getEstimatedHeight(int position)
+        private boolean applyItemRangeInserted(int itemPosition, int itemCount)
         {
-            if (position < measuredViews.length && measuredViews[position] != null)
+            recyclePreparedViews();
+            invalidateStickyHeader();
+            if (itemCount > 0 && itemPosition >= 0 && itemPosition <= itemMetadata.getCount())
             {
-                return measuredViews[position].y;
+                itemMetadata.insert(itemPosition, itemCount);
+                measureCache.insert(itemPosition, itemCount);
+                headerItems.insert(itemPosition, itemCount);
+                scannedHeaderItems.insert(itemPosition, itemCount);
+                offsetIndexInvalidated = true;
+                invalidateItemLanes(itemPosition);
+                applyHeightHints(itemPosition, itemPosition + itemCount);
+                insertIntoWindow(itemPosition, itemCount);
+                resetIdleMeasure();
+                return true;
             }
-            return getAverageHeight(adapter.getItemViewType(position));
+            return false;
         }
 
-        public int getAverageHeight(String viewType)
+        private boolean applyItemRangeRemoved(int itemPosition, int itemCount)
         {
-            if (viewType != null)
+            recyclePreparedViews();
+            invalidateStickyHeader();
+            itemCount = Math.min(itemCount, itemMetadata.getCount() - itemPosition);
+            if (itemCount > 0 && itemPosition >= 0)
             {
-                ViewType viewTypeInfo = viewTypes.get(viewType);
-                if (viewTypeInfo != null && viewTypeInfo.countedViews > 0)
-                {
-                    return viewTypeInfo.countedHeight / viewTypeInfo.countedViews;
-                }
+                removeFromWindow(itemPosition, itemCount);
+                itemMetadata.remove(itemPosition, itemCount);
+                measureCache.remove(itemPosition, itemCount);
+                headerItems.remove(itemPosition, itemCount);
+                scannedHeaderItems.remove(itemPosition, itemCount);
+                offsetIndexInvalidated = true;
+                invalidateItemLanes(itemPosition);
+                resetIdleMeasure();
+                return true;
             }
-            if (countedViews > 0)
+            return false;
+        }
+
+        private boolean applyItemMoved(int fromPosition, int toPosition)
+        {
+            recyclePreparedViews();
+            invalidateStickyHeader();
+            int count = itemMetadata.getCount();
+            if (fromPosition != toPosition && fromPosition >= 0 && fromPosition < count && toPosition >= 0 && toPosition < count)
             {
-                return countedHeight / countedViews;
+                // Only the window needs to change when the item moves from, to or across it
+                int windowEndPosition = usingViewStartPosition + usingViews.size();
+                boolean beforeWindow = fromPosition < usingViewStartPosition && toPosition < usingViewStartPosition;
+                boolean afterWindow = fromPosition >= windowEndPosition && toPosition >= windowEndPosition;
+                if (!beforeWindow && !afterWindow)
+                {
+                    removeFromWindow(fromPosition, 1);
+                }
+                itemMetadata.move(fromPosition, toPosition);
+                measureCache.move(fromPosition, toPosition);
+                headerItems.move(fromPosition, toPosition);
+                scannedHeaderItems.move(fromPosition, toPosition);
+                offsetIndexInvalidated = true;
+                invalidateItemLanes(Math.min(fromPosition, toPosition));
+                if (!beforeWindow && !afterWindow)
+                {
+                    insertIntoWindow(toPosition, 1);
+                }
+                return true;
             }
-            return (int)getResources().getDisplayMetrics().density * 50;
+            return false;
         }
 
-        public int getLastMeasuredWidth(int position)
+        private boolean applyItemRangeChanged(int itemPosition, int itemCount)
         {
-            if (position < measuredViews.length && measuredViews[position] != null)
+            recyclePreparedViews();
+            invalidateStickyHeader();
+            measureCache.invalidate(itemPosition, itemCount);
+            if (layoutMode == LAYOUT_GRID)
             {
-                return measuredViews[position].x;
+                invalidateItemLanes(itemPosition);
             }
-            return 0;
+            for (int i = scannedHeaderItems.nextSetBit(itemPosition); i >= 0 && i < itemPosition + itemCount; i = scannedHeaderItems.nextSetBit(i + 1))
+            {
+                scannedHeaderItems.set(i, false);
+                headerItems.set(i, false);
+            }
+            updateStoredViewTypes(itemPosition, itemCount);
+            applyHeightHints(itemPosition, itemPosition + itemCount);
+            int fromPosition = Math.max(itemPosition, usingViewStartPosition);
+            int toPosition = Math.min(itemPosition + itemCount, usingViewStartPosition + usingViews.size());
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                UsingView usingView = usingViews.get(i - usingViewStartPosition);
+                if (usingView != null)
+                {
+                    usingView.invalidated = true;
+                }
+            }
+            return fromPosition < toPosition;
         }
 
-        public int getReusableViewY(int position)
+        @Override
+        public void onDataSetRemapped(int[] previousPositions)
         {
-            // First calculate sizes of at least a screen before the requested item
-            int paddedWidthSize = getWidth() - getPaddingLeft() - getPaddingRight();
-            int needsCalculation = ((UniReusingContainer)getParent()).getHeight() + extraMarginY;
-            for (int i = position; i >= 0; i--)
+            // Find the first item of the window which is still there, to keep it in place
+            endFlingPrediction();
+            invalidateStickyHeader();
+            int[] newPositions = new int[itemMetadata.getCount()];
+            Arrays.fill(newPositions, -1);
+            for (int i = 0; i < previousPositions.length; i++)
             {
-                if (i < usingViewStartPosition || i >= usingViewStartPosition + usingViews.size())
+                if (previousPositions[i] >= 0 && previousPositions[i] < newPositions.length)
                 {
-                    UniReusableView reusableView = allocateReserveView(i);
-                    if (reusableView != null)
-                    {
-                        reusableView.measure(MeasureSpec.makeMeasureSpec(paddedWidthSize, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
-                        setLastMeasuredSize(i, reusableView.getMeasuredWidth(), reusableView.getMeasuredHeight());
-                    }
+                    newPositions[previousPositions[i]] = i;
                 }
-                needsCalculation -= getEstimatedHeight(i);
-                if (needsCalculation < 0)
+            }
+            int anchorPosition = -1;
+            int anchorY = usingViewStartY;
+            for (int i = usingViewStartPosition; i < usingViewStartPosition + usingViews.size() && i < newPositions.length; i++)
+            {
+                if (newPositions[i] >= 0)
                 {
+                    anchorPosition = newPositions[i];
+                    anchorY = getWindowItemY(i - usingViewStartPosition);
                     break;
                 }
             }
 
-            // Determine the position and return the result
-            int y = 0;
-            for (int i = 0; i < position; i++)
+            // Move the measured sizes along with the items, their content could have changed so views are updated again
+            recycleUsingViews();
+            itemMetadata.remap(previousPositions);
+            headerItems.remap(previousPositions);
+            scannedHeaderItems.remap(previousPositions);
+            if (adapter != null && adapter.hasContentVersions())
             {
-                y += getEstimatedHeight(i);
+                measureCache.remap(previousPositions, getContentVersions());
             }
-            return y;
+            else
+            {
+                measureCache.reset(itemMetadata.getCount());
+            }
+            offsetIndexInvalidated = true;
+            heightHintsInvalidated = true;
+            itemLanesEnd = 0;
+            usingViewStartPosition = Math.max(0, anchorPosition);
+            usingViewStartY = anchorPosition >= 0 ? anchorY : 0;
+            resetIdleMeasure();
+            requestLayout();
+        }
+
+        public void refreshCalculation(boolean keepMeasuredSizes)
+        {
+            // When the data set changes and the adapter reports content versions, items with the same content at the same position keep their measured size
+            endFlingPrediction();
+            invalidateStickyHeader();
+            recycleUsingViews();
+            itemMetadata.reset(getReusableViewCount());
+            headerItems.reset(itemMetadata.getCount());
+            scannedHeaderItems.reset(itemMetadata.getCount());
+            boolean keepCached = keepMeasuredSizes && adapter != null && adapter.hasContentVersions();
+            if (keepCached)
+            {
+                int[] previousPositions = new int[itemMetadata.getCount()];
+                for (int i = 0; i < previousPositions.length; i++)
+                {
+                    previousPositions[i] = i < measureCache.getCount() ? i : -1;
+                }
+                measureCache.remap(previousPositions, getContentVersions());
+            }
+            else
+            {
+                measureCache.reset(itemMetadata.getCount());
+            }
+            offsetIndex.reset(itemMetadata.getCount());
+            offsetIndexInvalidated = true;
+            heightHintsInvalidated = true;
+            itemLanesEnd = 0;
+            heightEstimator.reset();
+            estimationErrorTotal = 0;
+            estimationErrorCount = 0;
+            usingViewStartPosition = 0;
+            usingViewStartY = 0;
+            pendingScrollCorrection = 0;
+            if (keepCached)
+            {
+                applyCachedSizes();
+                addMeasuredSamples();
+            }
+            groupEstimatesInvalidated = true;
+            resetIdleMeasure();
+        }
+
+        private long[] getContentVersions()
+        {
+            long[] contentVersions = new long[itemMetadata.getCount()];
+            for (int i = 0; i < contentVersions.length; i++)
+            {
+                contentVersions[i] = adapter.getItemContentVersion(i);
+            }
+            return contentVersions;
         }
 
+        private int getReusableViewCount()
+        {
+            return adapter != null ? adapter.getItemCount() : 0;
+        }
 
-        // ---
-        // Reusable view creation
-        // ---
+        private int getReusableViewType(int position)
+        {
+            return adapter != null ? adapter.getItemViewTypeId(position) : UNDEFINED_VIEW_TYPE;
+        }
 
-        public void setOffsetY(int offsetY)
+        private int getStoredViewType(int position)
         {
-            // Request a new layout pass if items are about to enter view (ignore views going to exit for performance)
-            int startY = Math.max(getPaddingTop(), getPaddingTop() + offsetY - extraMarginY);
-            int endY = getPaddingTop() + offsetY + ((View)getParent()).getHeight() + extraMarginY;
-            int endItemY = usingViewStartY;
-            for (int i = usingViewStartPosition; i < usingViewStartPosition + usingViews.size(); i++)
+            // The view type is stored with the item once it's known, to avoid asking the adapter again
+            int viewType = itemMetadata.getViewType(position);
+            return viewType != UniItemMetadataStore.NO_VIEW_TYPE ? viewType : getReusableViewType(position);
+        }
+
+        private boolean isItemSelected(int position)
+        {
+            return adapter != null && adapter.isItemSelected(position);
+        }
+
+        private boolean isItemEnabled(int position)
+        {
+            return adapter == null || adapter.isItemEnabled(position);
+        }
+
+        private void initReusableView(UniReusableView container, int viewType)
+        {
+            if (adapter != null)
             {
-                endItemY += getEstimatedHeight(i);
+                container.setItemView(adapter.onCreateView(container, viewType));
+                container.setUnderView(adapter.onCreateUnderView(container, viewType));
             }
-            if (startY < usingViewStartY || endY > endItemY)
+            else
             {
-                requestLayout();
+                container.setItemView(null);
+                container.setUnderView(null);
             }
+        }
 
-            // Apply new offset
-            this.offsetY = offsetY;
+        private void updateReusableView(UniReusableView container, int viewType, int position)
+        {
+            if (adapter != null)
+            {
+                adapter.onUpdateView(container, container.getItemView(), viewType, position);
+                adapter.onUpdateUnderView(container, container.getUnderView(), viewType, position);
+                updateReusableViewState(container, position);
+                if (adapter.hasContentVersions())
+                {
+                    measureCache.setContentVersion(position, adapter.getItemContentVersion(position));
+                }
+            }
         }
 
-        public UniReusableView getReusableView(int position, boolean includeAll)
+        private void updateReusableViewState(UniReusableView container, int position)
         {
-            if (position >= usingViewStartPosition && position < usingViewStartPosition + usingViews.size())
+            if (adapter != null)
             {
-                return usingViews.get(position - usingViewStartPosition).view;
+                container.setSelected(isItemSelected(position), false);
+                container.setEnabled(isItemEnabled(position), false);
+                if (position == adapter.itemSwipedOpen)
+                {
+                    container.swipeOpen(false);
+                }
+                else
+                {
+                    container.swipeClose(false);
+                }
             }
-            if (includeAll)
+        }
+
+
+        // ---
+        // Track size measurement
+        // ---
+
+        public void setLastMeasuredSize(int position, int width, int height)
+        {
+            // Track the error of the estimate for the view type when an item is measured for the first time
+            int viewType = getReusableViewType(position);
+            boolean firstMeasurement = position < itemMetadata.getCount() && !itemMetadata.isMeasured(position);
+            if (firstMeasurement)
             {
-                UniReusableView view = allocateReserveView(position);
-                return view;
+                estimationErrorCount++;
+                estimationErrorTotal += Math.abs(height - getEstimatedHeight(position));
+                if (estimationErrorTotal > 0x10000000)
+                {
+                    int reduceCount = (estimationErrorCount + 1) / 2;
+                    estimationErrorTotal -= reduceCount * (estimationErrorTotal / estimationErrorCount);
+                    estimationErrorCount -= reduceCount;
+                }
+            }
+
+            // Store in the item metadata and update the offset index
+            if (position < itemMetadata.getCount())
+            {
+                UniOffsetIndex offsetIndex = getOffsetIndex();
+                if (itemMetadata.isMeasured(position))
+                {
+                    offsetIndex.addSize(position, getIndexSize(position, height) - getIndexSize(position, itemMetadata.getHeight(position)), 0);
+                }
+                else
+                {
+                    offsetIndex.addSize(position, getIndexSize(position, height), 1);
+                }
+                offsetIndex.setCrossSize(position, width);
+                itemMetadata.setMeasuredSize(position, width, height);
+                measureCache.put(position, width, height);
+                if (viewType >= 0)
+                {
+                    itemMetadata.setViewType(position, viewType);
+                }
+            }
+
+            // Add to the samples for estimating the height of unmeasured items, measuring the same item again doesn't add another sample
+            if (firstMeasurement)
+            {
+                heightEstimator.addMeasuredSize(viewType >= 0 ? viewType : UniSizeEstimator.ALL_VIEW_TYPES, getItemWidth(position), height);
+                groupEstimatesInvalidated = true;
             }
-            return null;
         }
 
-        private UniReusableView allocateReusableView(int position)
+        private void addMeasuredSamples()
         {
-            // Expand array if there is no item for the position
-            if (position < usingViewStartPosition)
+            for (int i = 0; i < itemMetadata.getCount(); i++)
             {
-                for (int i = position; i < usingViewStartPosition; i++)
+                if (itemMetadata.isMeasured(i))
                 {
-                    usingViews.add(0, null);
+                    int viewType = getStoredViewType(i);
+                    heightEstimator.addMeasuredSize(viewType >= 0 ? viewType : UniSizeEstimator.ALL_VIEW_TYPES, getItemWidth(i), itemMetadata.getHeight(i));
                 }
-                usingViewStartPosition = position;
             }
-            else if (position >= usingViewStartPosition + usingViews.size())
+            groupEstimatesInvalidated = true;
+        }
+
+        private void updateStoredViewTypes(int itemPosition, int itemCount)
+        {
+            // A changed item can have another view type, unmeasured items are estimated by it so the index needs to know
+            int toPosition = Math.min(itemPosition + itemCount, itemMetadata.getCount());
+            for (int i = Math.max(0, itemPosition); i < toPosition; i++)
             {
-                for (int i = usingViewStartPosition + usingViews.size(); i <= position; i++)
+                int viewType = getReusableViewType(i);
+                if (viewType != itemMetadata.getViewType(i))
                 {
-                    usingViews.add(null);
+                    itemMetadata.setViewType(i, viewType);
+                    if (!offsetIndexInvalidated)
+                    {
+                        offsetIndex.setViewType(i, viewType);
+                    }
                 }
             }
+        }
 
-            // Clear the view taking up the given position, or use the item already prepared for this position
-            String viewType = getReusableViewType(position);
-            UniReusableView reusableView = null;
+        private void measureWindowItem(int position, int widthMeasureSpec)
+        {
+            // Skip measuring when the view already has the size of the same content at the same width
             UsingView usingView = usingViews.get(position - usingViewStartPosition);
-            if (usingView != null)
+            boolean sameContent = usingView.boundVersion == measureCache.getVersion(position) && measureCache.isCached(position);
+            if (!sameContent || usingView.measureSpec != widthMeasureSpec || usingView.view.isLayoutRequested())
+            {
+                usingView.view.measure(widthMeasureSpec, MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
+                usingView.measureSpec = widthMeasureSpec;
+                setLastMeasuredSize(position, usingView.view.getMeasuredWidth(), usingView.view.getMeasuredHeight());
+            }
+        }
+
+        private void applyHeightHints(int fromPosition, int toPosition)
+        {
+            // Items with a height given by the adapter count as measured, they don't need to be inflated to know their size
+            if (adapter == null || !adapter.hasHeightHints())
             {
-                if (usingView.viewType.equals(viewType))
+                return;
+            }
+            toPosition = Math.min(toPosition, itemMetadata.getCount());
+            for (int i = Math.max(0, fromPosition); i < toPosition; i++)
+            {
+                int height = adapter.getItemHeightHint(i, getItemWidth(i));
+                if (height >= 0 && (!itemMetadata.isMeasured(i) || itemMetadata.getHeight(i) != height))
                 {
-                    reusableView = usingView.view;
+                    itemMetadata.setMeasuredSize(i, itemMetadata.isMeasured(i) ? itemMetadata.getWidth(i) : 0, height);
+                    offsetIndexInvalidated = true;
+                }
+            }
+        }
+
+        private void applyCachedSizes()
+        {
+            // After a width change, use the sizes measured earlier for this width, other items are estimated until measured
+            int count = itemMetadata.getCount();
+            for (int i = 0; i < count; i++)
+            {
+                if (measureCache.isCached(i))
+                {
+                    itemMetadata.setMeasuredSize(i, measureCache.getWidth(i), measureCache.getHeight(i));
                 }
                 else
                 {
-                    reserveViews.add(usingView);
-                    removeView(usingView.view);
-                    usingViews.set(position - usingViewStartPosition, null);
+                    itemMetadata.clearMeasuredSize(i);
                 }
             }
+            offsetIndexInvalidated = true;
+            heightHintsInvalidated = true;
+            resetIdleMeasure();
+        }
 
-            // If not found, create a new view
-            if (reusableView == null)
+        public int getEstimatedHeight(int position)
+        {
+            // Unmeasured items use the estimate of their view type, the same one as the offset index, otherwise their position in the window wouldn't match the index
+            if (itemMetadata.isMeasured(position))
+            {
+                return itemMetadata.getHeight(position);
+            }
+            return getGroupHeights()[UniOffsetIndex.getEstimateGroup(getStoredViewType(position))];
+        }
+
+        public int getAverageHeight(int viewType)
+        {
+            // Only fall back to a fixed height when nothing has been measured yet
+            int estimate = heightEstimator.estimateSize(viewType >= 0 ? viewType : UniSizeEstimator.ALL_VIEW_TYPES, getCellWidth(1));
+            if (estimate != UniSizeEstimator.NO_ESTIMATE)
+            {
+                return estimate;
+            }
+            return (int)getResources().getDisplayMetrics().density * 50;
+        }
+
+        public float getEstimationError()
+        {
+            return estimationErrorCount > 0 ? (float)estimationErrorTotal / estimationErrorCount : 0;
+        }
+
+        private int[] getGroupHeights()
+        {
+            // Layout asks for estimates of many items, the estimate of each view type is kept until the estimator receives samples or the width changes
+            if (groupEstimatesInvalidated || groupEstimatesWidth != itemWidth || groupEstimatesColumnCount != columnCount)
             {
-                usingView = null;
-                for (UsingView checkUsingView : reserveViews)
+                for (int group = 0; group < groupHeights.length; group++)
                 {
-                    if (checkUsingView.viewType.equals(viewType))
-                    {
-                        usingView = checkUsingView;
-                        reserveViews.remove(checkUsingView);
-                        break;
-                    }
+                    groupHeights[group] = getAverageHeight(group == UniOffsetIndex.DEFAULT_ESTIMATE_GROUP ? UNDEFINED_VIEW_TYPE : group - 1);
+                    groupIndexSizes[group] = groupHeights[group] / columnCount;
                 }
-                if (usingView == null)
+                groupEstimatesInvalidated = false;
+                groupEstimatesWidth = itemWidth;
+                groupEstimatesColumnCount = columnCount;
+            }
+            return groupHeights;
+        }
+
+        private int[] getIndexEstimates()
+        {
+            getGroupHeights();
+            return groupIndexSizes;
+        }
+
+        public int getLastMeasuredWidth(int position)
+        {
+            return itemMetadata.getWidth(position);
+        }
+
+        private UniOffsetIndex getOffsetIndex()
+        {
+            // Range changes only invalidate the index, it's rebuilt once when needed
+            if (offsetIndexInvalidated)
+            {
+                storeViewTypes();
+            }
+            if (offsetIndexInvalidated && layoutMode == LAYOUT_LIST)
+            {
+                offsetIndex.rebuild(itemMetadata);
+                offsetIndexInvalidated = false;
+            }
+            else if (offsetIndexInvalidated)
+            {
+                offsetIndex.reset(itemMetadata.getCount());
+                for (int i = 0; i < itemMetadata.getCount(); i++)
                 {
-                    usingView = new UsingView();
-                    reusableView = new UniReusableView(getContext());
-                    reusableView.setLayoutParams(new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
-                    initReusableView(reusableView, viewType);
-                    if (reusableView.getItemContainerView() != null)
+                    if (itemMetadata.isMeasured(i))
                     {
-                        reusableView.getItemContainerView().setOnClickListener(new OnClickListener()
-                        {
-                            @Override
-                            public void onClick(View view)
-                            {
-                                if (view != null && view.getParent() instanceof UniReusableView)
-                                {
-                                    onReusableViewClick((UniReusableView)view.getParent());
-                                }
-                            }
-                        });
+                        offsetIndex.addSize(i, getIndexSize(i, itemMetadata.getHeight(i)), 1);
+                        offsetIndex.setCrossSize(i, itemMetadata.getWidth(i));
                     }
-                    addView(reusableView);
                 }
-                else
+                offsetIndex.setViewTypes(itemMetadata);
+                offsetIndexInvalidated = false;
+            }
+            return offsetIndex;
+        }
+
+        private void storeViewTypes()
+        {
+            // The index counts unmeasured items per view type, only new items need to ask the adapter
+            for (int i = 0; i < itemMetadata.getCount(); i++)
+            {
+                if (itemMetadata.getViewType(i) == UniItemMetadataStore.NO_VIEW_TYPE)
                 {
-                    reusableView = usingView.view;
-                    addView(reusableView);
+                    itemMetadata.setViewType(i, getReusableViewType(i));
+                }
+            }
+        }
+
+        private int getStoredHeight(int fromPosition, int toPosition)
+        {
+            int[] estimates = getIndexEstimates();
+            int height = 0;
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                height += itemMetadata.isMeasured(i) ? getIndexSize(i, itemMetadata.getHeight(i)) : estimates[UniOffsetIndex.getEstimateGroup(getStoredViewType(i))];
+            }
+            return height;
+        }
+
+        private int getItemY(int position)
+        {
+            // Items are placed relative to the window, which may not be exactly at the offset in the index
+            int[] estimates = getIndexEstimates();
+            return usingViewStartY + getOffsetIndex().getOffset(position, estimates) - getOffsetIndex().getOffset(usingViewStartPosition, estimates);
+        }
+
+
+        // ---
+        // Prefetch views and measure items while idle
+        // ---
+
+        private final MessageQueue.IdleHandler idleWorkHandler = new MessageQueue.IdleHandler()
+        {
+            @Override
+            public boolean queueIdle()
+            {
+                idleWorkScheduled = false;
+                long endTime = SystemClock.uptimeMillis() + idleMeasureBudget;
+                performIdleFlingPrepare(endTime);
+                performIdlePrefetch(endTime);
+                performIdleMeasure(endTime);
+                return false;
+            }
+        };
+
+        private final Runnable idleWorkRunnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                scheduleIdleWork();
+            }
+        };
+
+        private void resetIdleMeasure()
+        {
+            idleMeasureForward = 0;
+            idleMeasureBackward = Integer.MAX_VALUE;
+            scheduleIdleWork();
+        }
+
+        private void scheduleIdleWork()
+        {
+            boolean hasWork = (idleMeasure && !idleMeasurePaused) || hasIdlePrefetch() || flingDirection != 0;
+            if (hasWork && !idleWorkScheduled && Looper.myLooper() == Looper.getMainLooper())
+            {
+                idleWorkScheduled = true;
+                Looper.myQueue().addIdleHandler(idleWorkHandler);
+            }
+            else if (!hasWork && idleWorkScheduled)
+            {
+                idleWorkScheduled = false;
+                Looper.myQueue().removeIdleHandler(idleWorkHandler);
+            }
+        }
+
+        private boolean hasIdlePrefetch()
+        {
+            return adapter != null && recyclePool != null && recyclePool.nextPrefetchViewType() >= 0;
+        }
+
+        private void performIdlePrefetch(long endTime)
+        {
+            // Fill up the recycle pool with new views, also while scrolling to prevent creating them on demand, at least one view per idle slice
+            if (!hasIdlePrefetch() || getWindowToken() == null)
+            {
+                return;
+            }
+            int viewType = recyclePool.nextPrefetchViewType();
+            while (viewType >= 0)
+            {
+                recyclePool.put(viewType, createUsingView(viewType, true));
+                viewType = recyclePool.nextPrefetchViewType();
+                if (SystemClock.uptimeMillis() >= endTime)
+                {
+                    break;
+                }
+            }
+            if (viewType >= 0)
+            {
+                post(idleWorkRunnable);
+            }
+        }
+
+        private void performIdleMeasure(long endTime)
+        {
+            // Wait until scrolling has stopped
+            int paddedWidthSize = getWidth() - getPaddingLeft() - getPaddingRight();
+            if (!idleMeasure || idleMeasurePaused || adapter == null || paddedWidthSize <= 0 || layoutMode != LAYOUT_LIST)
+            {
+                return;
+            }
+            if (SystemClock.uptimeMillis() - lastOffsetChangeTime < IDLE_MEASURE_SCROLL_DELAY)
+            {
+                removeCallbacks(idleWorkRunnable);
+                postDelayed(idleWorkRunnable, IDLE_MEASURE_SCROLL_DELAY);
+                return;
+            }
+
+            // Measure upcoming items first, then the ones above, until the time budget is used up
+            int scrollCorrection = 0;
+            int position = nextIdleMeasurePosition();
+            if (position < 0)
+            {
+                return;
+            }
+            while (position >= 0 && SystemClock.uptimeMillis() < endTime)
+            {
+                int previousHeight = getEstimatedHeight(position);
+                UniReusableView reusableView = allocateReserveView(position);
+                if (reusableView != null)
+                {
+                    reusableView.measure(itemWidthSpec, MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
+                    setLastMeasuredSize(position, reusableView.getMeasuredWidth(), reusableView.getMeasuredHeight());
+                    if (position < usingViewStartPosition && !anchoredLayout)
+                    {
+                        scrollCorrection += reusableView.getMeasuredHeight() - previousHeight;
+                    }
+                }
+                if (SystemClock.uptimeMillis() >= endTime)
+                {
+                    break;
+                }
+                position = nextIdleMeasurePosition();
+            }
+
+            // Keep the visible items in place when items above changed size, then continue in the next idle slice
+            // With anchored layout the content origin moves instead, it's reconciled during layout
+            if (scrollCorrection != 0)
+            {
+                usingViewStartY += scrollCorrection;
+                offsetY += scrollCorrection;
+                pendingScrollCorrection += scrollCorrection;
+            }
+            requestLayout();
+            if (position >= 0)
+            {
+                post(idleWorkRunnable);
+            }
+        }
+
+        private int nextIdleMeasurePosition()
+        {
+            int count = itemMetadata.getCount();
+            idleMeasureForward = Math.max(idleMeasureForward, usingViewStartPosition + usingViews.size());
+            while (idleMeasureForward < count)
+            {
+                if (!itemMetadata.isMeasured(idleMeasureForward))
+                {
+                    return idleMeasureForward;
+                }
+                idleMeasureForward++;
+            }
+            idleMeasureBackward = Math.min(idleMeasureBackward, Math.min(usingViewStartPosition, count) - 1);
+            while (idleMeasureBackward >= 0)
+            {
+                if (!itemMetadata.isMeasured(idleMeasureBackward))
+                {
+                    return idleMeasureBackward;
+                }
+                idleMeasureBackward--;
+            }
+            return -1;
+        }
+
+        @Override
+        protected void onAttachedToWindow()
+        {
+            super.onAttachedToWindow();
+            scheduleIdleWork();
+        }
+
+        @Override
+        protected void onDetachedFromWindow()
+        {
+            super.onDetachedFromWindow();
+            removeCallbacks(idleWorkRunnable);
+            removeCallbacks(reconcileOriginRunnable);
+            if (idleWorkScheduled)
+            {
+                idleWorkScheduled = false;
+                Looper.myQueue().removeIdleHandler(idleWorkHandler);
+            }
+        }
+
+
+        // ---
+        // Scroll anchors
+        // ---
+
+        public void setScrollAnchor(int position, float location)
+        {
+            anchorPosition = position;
+            anchorLocation = location;
+            smoothAnchorPosition = -1;
+            requestLayout();
+        }
+
+        public int setSmoothScrollAnchor(int position, float location, int scrollAreaHeight)
+        {
+            smoothAnchorPosition = position;
+            smoothAnchorLocation = location;
+            smoothAnchorScrollY = getItemY(position) - (int)(location * (scrollAreaHeight - getEstimatedHeight(position)));
+            return smoothAnchorScrollY;
+        }
+
+        public void clearSmoothScrollAnchor()
+        {
+            smoothAnchorPosition = -1;
+        }
+
+        private void applyScrollAnchor(int paddedWidthSize, int paddedHeightSize, int childWidthSpec)
+        {
+            // Start a new window at the anchor item, placed by the offset index, and scroll so it lands at the requested location
+            int position = Math.min(anchorPosition, getReusableViewCount() - 1);
+            anchorPosition = -1;
+            if (position < 0)
+            {
+                return;
+            }
+            if (layoutMode != LAYOUT_LIST)
+            {
+                position = getLineStart(position);
+                usingViewStartY = getItemY(position);
+                usingViewStartPosition = position;
+                recycleUsingViews();
+                offsetY = Math.max(0, usingViewStartY - (int)(anchorLocation * (paddedHeightSize - getEstimatedHeight(position))));
+                pendingScrollY = offsetY;
+                pendingScrollCorrection = 0;
+                return;
+            }
+            usingViewStartY = getItemY(position);
+            usingViewStartPosition = position;
+            recycleUsingViews();
+            UniReusableView reusableView = allocateReusableView(position);
+            int height = getEstimatedHeight(position);
+            if (reusableView != null)
+            {
+                measureWindowItem(position, MeasureSpec.makeMeasureSpec(paddedWidthSize, childWidthSpec));
+                height = reusableView.getMeasuredHeight();
+            }
+            offsetY = Math.max(0, usingViewStartY - (int)(anchorLocation * (paddedHeightSize - height)));
+            pendingScrollY = offsetY;
+            pendingScrollCorrection = 0;
+        }
+
+        private void checkSmoothScrollAnchor(int paddedHeightSize)
+        {
+            // Once the item is laid out, correct the scroll target if the estimate was different
+            if (smoothAnchorPosition >= usingViewStartPosition && smoothAnchorPosition < usingViewStartPosition + usingViews.size())
+            {
+                int y = getWindowItemY(smoothAnchorPosition - usingViewStartPosition);
+                int scrollY = y - (int)(smoothAnchorLocation * (paddedHeightSize - getEstimatedHeight(smoothAnchorPosition)));
+                if (scrollY != smoothAnchorScrollY)
+                {
+                    pendingSmoothScrollY = Math.max(0, scrollY);
+                }
+                smoothAnchorPosition = -1;
+            }
+        }
+
+
+        // ---
+        // Anchored layout
+        // ---
+
+        private final Runnable reconcileOriginRunnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                requestLayout();
+            }
+        };
+
+        private int getFirstVisibleIndex()
+        {
+            int y = usingViewStartY;
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                y += getEstimatedHeight(usingViewStartPosition + i);
+                if (y > getPaddingTop() + offsetY)
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int getWindowItemY(int index)
+        {
+            if (layoutMode != LAYOUT_LIST && index < usingViews.size() && usingViews.get(index) != null)
+            {
+                return usingViews.get(index).top;
+            }
+            int y = usingViewStartY;
+            for (int i = 0; i < index; i++)
+            {
+                y += getEstimatedHeight(usingViewStartPosition + i);
+            }
+            return y;
+        }
+
+        private boolean canReconcileOrigin()
+        {
+            // Not while a scroller moves the content (it would jump back), try again later
+            if (flingDirection != 0 || (offsetY > 0 && SystemClock.uptimeMillis() - lastOffsetChangeTime < IDLE_MEASURE_SCROLL_DELAY))
+            {
+                removeCallbacks(reconcileOriginRunnable);
+                postDelayed(reconcileOriginRunnable, IDLE_MEASURE_SCROLL_DELAY);
+                return false;
+            }
+            return true;
+        }
+
+        private boolean reconcileContentOrigin()
+        {
+            // Move the first item back to the top of the content when it's in the window
+            // Also when items above the window turned out taller than estimated, the content above the top can't be scrolled to
+            int origin = usingViews.size() > 0 ? getItemY(0) : 0;
+            if (origin == 0 || (origin > 0 && usingViewStartPosition != 0) || !canReconcileOrigin())
+            {
+                return false;
+            }
+            int correction = -origin;
+            usingViewStartY += correction;
+            offsetY += correction;
+            if (pendingScrollY >= 0)
+            {
+                pendingScrollY = Math.max(0, offsetY);
+            }
+            else
+            {
+                pendingScrollCorrection += correction;
+            }
+            return true;
+        }
+
+        @Override
+        protected void dispatchDraw(Canvas canvas)
+        {
+            // Draw placeholders for items in the window which are not bound yet
+            if (placeholderPaint != null)
+            {
+                int y = usingViewStartY;
+                for (int i = 0; i < usingViews.size(); i++)
+                {
+                    int height = getEstimatedHeight(usingViewStartPosition + i);
+                    if (usingViews.get(i) == null)
+                    {
+                        canvas.drawRect(0, y, getWidth(), y + height, placeholderPaint);
+                    }
+                    y += height;
+                }
+            }
+            super.dispatchDraw(canvas);
+            lastFrameCorrectionPasses = correctionPasses;
+            maxFrameCorrectionPasses = Math.max(maxFrameCorrectionPasses, correctionPasses);
+            correctionPasses = 0;
+        }
+
+
+        // ---
+        // Fling prediction
+        // ---
+
+        public void startFlingPrediction(int targetY, int direction)
+        {
+            // Determine the items visible where the fling will land, no need to prepare them when the window is close to it
+            recyclePreparedViews();
+            flingTargetY = targetY;
+            flingDirection = direction;
+            lastOffsetChangeTime = SystemClock.uptimeMillis();
+            int startPosition = getPositionAtY(getPaddingTop() + targetY - extraMarginY);
+            int endPosition = getPositionAtY(getPaddingTop() + targetY + ((View)getParent()).getHeight() + extraMarginY) + 1;
+            if (layoutMode == LAYOUT_LIST && (endPosition < usingViewStartPosition || startPosition > usingViewStartPosition + usingViews.size()))
+            {
+                preparedStartPosition = startPosition;
+                preparedEndPosition = endPosition;
+            }
+            scheduleIdleWork();
+        }
+
+        public void endFlingPrediction()
+        {
+            flingDirection = 0;
+            recyclePreparedViews();
+        }
+
+        private void performIdleFlingPrepare(long endTime)
+        {
+            // Stop when the fling has landed or was interrupted
+            if (flingDirection == 0)
+            {
+                return;
+            }
+            boolean landed = flingDirection > 0 ? offsetY >= flingTargetY : offsetY <= flingTargetY;
+            if (landed || SystemClock.uptimeMillis() - lastOffsetChangeTime >= IDLE_MEASURE_SCROLL_DELAY)
+            {
+                endFlingPrediction();
+                return;
+            }
+
+            // Bind and measure the items of the landing viewport, only store sizes below the window to prevent scroll corrections while flinging
+            int paddedWidthSize = getWidth() - getPaddingLeft() - getPaddingRight();
+            while (adapter != null && paddedWidthSize > 0 && preparedStartPosition + preparedViews.size() < preparedEndPosition && SystemClock.uptimeMillis() < endTime)
+            {
+                int position = preparedStartPosition + preparedViews.size();
+                UsingView usingView = null;
+                if (position < usingViewStartPosition || position >= usingViewStartPosition + usingViews.size())
+                {
+                    int viewType = getReusableViewType(position);
+                    usingView = recyclePool.take(viewType);
+                    if (usingView == null)
+                    {
+                        usingView = createUsingView(viewType, true);
+                    }
+                    updateReusableView(usingView.view, viewType, position);
+                    usingView.boundVersion = measureCache.getVersion(position);
+                    usingView.measureSpec = itemWidthSpec;
+                    usingView.view.measure(usingView.measureSpec, MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
+                    if (position >= usingViewStartPosition + usingViews.size())
+                    {
+                        setLastMeasuredSize(position, usingView.view.getMeasuredWidth(), usingView.view.getMeasuredHeight());
+                    }
+                }
+                preparedViews.addLast(usingView);
+            }
+
+            // Continue in the next idle slice, or check again later if the fling has ended
+            if (preparedStartPosition + preparedViews.size() < preparedEndPosition)
+            {
+                post(idleWorkRunnable);
+            }
+            else
+            {
+                removeCallbacks(idleWorkRunnable);
+                postDelayed(idleWorkRunnable, IDLE_MEASURE_SCROLL_DELAY);
+            }
+        }
+
+        private UsingView takePreparedView(int position, int viewType)
+        {
+            int index = position - preparedStartPosition;
+            if (index >= 0 && index < preparedViews.size())
+            {
+                UsingView usingView = preparedViews.get(index);
+                if (usingView != null && usingView.viewType == viewType)
+                {
+                    preparedViews.set(index, null);
+                    return usingView;
+                }
+            }
+            return null;
+        }
+
+        private void recyclePreparedViews()
+        {
+            for (UsingView usingView : preparedViews)
+            {
+                if (usingView != null)
+                {
+                    recyclePool.put(usingView.viewType, usingView);
+                }
+            }
+            preparedViews.clear();
+            preparedStartPosition = 0;
+            preparedEndPosition = 0;
+        }
+
+        private int getLookaheadBefore(int offsetY)
+        {
+            if (flingDirection < 0)
+            {
+                return extraMarginY + Math.max(0, Math.min(offsetY - flingTargetY, extraMarginY * FLING_LOOKAHEAD_FACTOR));
+            }
+            return extraMarginY;
+        }
+
+        private int getLookaheadAfter(int offsetY)
+        {
+            if (flingDirection > 0)
+            {
+                return extraMarginY + Math.max(0, Math.min(flingTargetY - offsetY, extraMarginY * FLING_LOOKAHEAD_FACTOR));
+            }
+            return extraMarginY;
+        }
+
+        private int getPositionAtY(int y)
+        {
+            // Convert to an offset in the index (the window may be placed differently), then search for the item containing it
+            return getOffsetIndex().getPositionAtOffset(y - getItemY(0), getIndexEstimates());
+        }
+
+
+        // ---
+        // Sticky headers
+        // ---
+
+        private void invalidateStickyHeader()
+        {
+            stickyHeaderPosition = -1;
+            stickySection = -1;
+            stickySectionHeader = -1;
+            if (stickyHeaders)
+            {
+                requestLayout();
+            }
+        }
+
+        private int findSectionHeader(int position)
+        {
+            // Adapters with sections know where the section starts, the last section is kept to avoid searching for it on every scroll
+            int section = adapter.getSectionForPosition(position);
+            if (section >= 0)
+            {
+                if (section != stickySection)
+                {
+                    int sectionStart = adapter.getPositionForSection(section);
+                    stickySection = section;
+                    stickySectionHeader = sectionStart >= 0 && isHeaderItem(sectionStart) ? sectionStart : -1;
+                }
+                return stickySectionHeader;
+            }
+
+            // Otherwise search backwards, items which were checked before are looked up in the header flags instead of asking the adapter again
+            for (int i = position; i >= 0; i--)
+            {
+                int header = headerItems.previousSetBit(i);
+                int unscanned = scannedHeaderItems.previousClearBit(i);
+                if (header > unscanned)
+                {
+                    return header;
+                }
+                if (unscanned < 0)
+                {
+                    return -1;
+                }
+                i = unscanned;
+                if (isHeaderItem(i))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean isHeaderItem(int position)
+        {
+            if (!scannedHeaderItems.get(position))
+            {
+                scannedHeaderItems.set(position, true);
+                headerItems.set(position, adapter.isHeaderItem(position));
+            }
+            return headerItems.get(position);
+        }
+
+        private void updateStickyHeader()
+        {
+            // Find the header of the section at the top, recycle the pinned header view if there is none
+            int firstVisibleIndex = stickyHeaders && layoutMode == LAYOUT_LIST && adapter != null && itemWidthSpec != 0 ? getFirstVisibleIndex() : -1;
+            int headerPosition = firstVisibleIndex >= 0 ? findSectionHeader(usingViewStartPosition + firstVisibleIndex) : -1;
+            if (headerPosition < 0)
+            {
+                if (stickyHeader != null)
+                {
+                    recycleUsingView(stickyHeader);
+                    stickyHeader = null;
+                }
+                stickyHeaderPosition = -1;
+                return;
+            }
+
+            // Only bind and measure when the section changes, reuse the view if the view type stays the same
+            if (headerPosition != stickyHeaderPosition || stickyHeader == null)
+            {
+                int viewType = getReusableViewType(headerPosition);
+                if (stickyHeader != null && stickyHeader.viewType != viewType)
+                {
+                    recycleUsingView(stickyHeader);
+                    stickyHeader = null;
+                }
+                if (stickyHeader == null)
+                {
+                    stickyHeader = recyclePool.take(viewType);
+                    if (stickyHeader == null)
+                    {
+                        stickyHeader = createUsingView(viewType, false);
+                    }
+                    addView(stickyHeader.view);
+                }
+                updateReusableView(stickyHeader.view, viewType, headerPosition);
+                stickyHeader.view.setItemPosition(headerPosition);
+                stickyHeader.boundVersion = measureCache.getVersion(headerPosition);
+                stickyHeader.measureSpec = itemWidthSpec;
+                stickyHeader.view.measure(itemWidthSpec, MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
+                stickyHeader.view.layout(0, 0, stickyHeader.view.getMeasuredWidth(), stickyHeader.view.getMeasuredHeight());
+                stickyHeaderPosition = headerPosition;
+            }
+
+            // Pin to the top, or move up when the next header pushes it away
+            int headerHeight = stickyHeader.view.getHeight();
+            int headerY = getPaddingTop() + offsetY;
+            int itemY = getWindowItemY(firstVisibleIndex + 1);
+            for (int i = firstVisibleIndex + 1; i < usingViews.size() && itemY < headerY + headerHeight; i++)
+            {
+                if (isHeaderItem(usingViewStartPosition + i))
+                {
+                    headerY = Math.min(headerY, itemY - headerHeight);
+                    break;
+                }
+                itemY += getEstimatedHeight(usingViewStartPosition + i);
+            }
+            if (headerY != stickyHeader.view.getTop())
+            {
+                stickyHeader.view.offsetTopAndBottom(headerY - stickyHeader.view.getTop());
+            }
+        }
+
+        @Override
+        protected int getChildDrawingOrder(int childCount, int i)
+        {
+            // Draw the pinned header on top of the items
+            int headerIndex = stickyHeader != null ? indexOfChild(stickyHeader.view) : -1;
+            if (headerIndex < 0)
+            {
+                return i;
+            }
+            if (i == childCount - 1)
+            {
+                return headerIndex;
+            }
+            return i >= headerIndex ? i + 1 : i;
+        }
+
+
+        // ---
+        // Time-sliced binding
+        // ---
+
+        private final Runnable bindSliceRunnable = new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                requestLayout();
+            }
+        };
+
+        private void startBindSlice()
+        {
+            bindSliceEndTime = SystemClock.uptimeMillis() + bindFrameBudget;
+            bindSliceCount = 0;
+            bindPending = false;
+        }
+
+        private boolean takeBindSlice()
+        {
+            // Always bind at least one item per pass, the remaining items wait for the next frame when the budget is used up
+            if (bindFrameBudget <= 0 || bindSliceCount == 0 || SystemClock.uptimeMillis() < bindSliceEndTime)
+            {
+                bindSliceCount++;
+                return true;
+            }
+            bindPending = true;
+            return false;
+        }
+
+        private void finishBindSlice()
+        {
+            removeCallbacks(bindSliceRunnable);
+            if (bindPending)
+            {
+                post(bindSliceRunnable);
+            }
+        }
+
+        private int bindWindowItem(int index, int itemWidthSpec)
+        {
+            // Bind or measure an item in the window if needed, returns the change in height (it stays unchanged when postponed)
+            int position = usingViewStartPosition + index;
+            UsingView usingView = usingViews.get(index);
+            boolean needsBind = usingView == null || usingView.invalidated;
+            if (!needsBind && !usingView.view.isLayoutRequested() && usingView.measureSpec == itemWidthSpec)
+            {
+                return 0;
+            }
+            if (!takeBindSlice())
+            {
+                return 0;
+            }
+            int previousHeight = getEstimatedHeight(position);
+            if (needsBind && allocateReusableView(position) == null)
+            {
+                return 0;
+            }
+            measureWindowItem(position, itemWidthSpec);
+            usingViews.get(index).invalidated = false;
+            return getEstimatedHeight(position) - previousHeight;
+        }
+
+
+        // ---
+        // Grid layouts
+        // ---
+
+        private int getItemSpan(int position)
+        {
+            if (layoutMode == LAYOUT_LIST || adapter == null)
+            {
+                return 1;
+            }
+            return Math.max(1, Math.min(columnCount, adapter.getItemSpanSize(position, columnCount)));
+        }
+
+        private int getCellWidth(int span)
+        {
+            return itemWidth * span / columnCount;
+        }
+
+        private int getItemWidth(int position)
+        {
+            return getCellWidth(getItemSpan(position));
+        }
+
+        private int getLaneX(int lane)
+        {
+            return itemWidth * Math.max(0, lane) / columnCount;
+        }
+
+        private int getIndexSize(int position, int height)
+        {
+            // Grids index the part of the height an item adds to the content, which is spread over the columns
+            return height * getItemSpan(position) / columnCount;
+        }
+
+        private void invalidateItemLanes(int position)
+        {
+            itemLanesEnd = Math.max(0, Math.min(itemLanesEnd, position));
+        }
+
+        private int getItemLane(int position)
+        {
+            // Grid columns follow from the spans of the items before, staggered columns are remembered once laid out from the start
+            if (layoutMode == LAYOUT_GRID)
+            {
+                while (itemLanesEnd <= position)
+                {
+                    int lane = 0;
+                    if (itemLanesEnd > 0)
+                    {
+                        lane = itemLanes[itemLanesEnd - 1] + getItemSpan(itemLanesEnd - 1);
+                        if (lane + getItemSpan(itemLanesEnd) > columnCount)
+                        {
+                            lane = 0;
+                        }
+                    }
+                    storeItemLane(itemLanesEnd, lane);
+                }
+                return itemLanes[position];
+            }
+            return position < itemLanesEnd ? itemLanes[position] : -1;
+        }
+
+        private void storeItemLane(int position, int lane)
+        {
+            // Only extends the remembered columns at the end, they stay valid up to the first change in the list
+            if (position == itemLanesEnd)
+            {
+                if (position >= itemLanes.length)
+                {
+                    itemLanes = Arrays.copyOf(itemLanes, Math.max(16, Math.max(position + 1, itemLanes.length + itemLanes.length / 2)));
+                }
+                itemLanes[position] = lane;
+                itemLanesEnd++;
+            }
+        }
+
+        private int getLineStart(int position)
+        {
+            // Grids add and remove items per row, staggered grids per item
+            if (layoutMode == LAYOUT_GRID)
+            {
+                while (position > 0 && getItemLane(position) != 0)
+                {
+                    position--;
+                }
+            }
+            return position;
+        }
+
+        private int getLineEnd(int position)
+        {
+            int count = getReusableViewCount();
+            position++;
+            if (layoutMode == LAYOUT_GRID)
+            {
+                while (position < count && getItemLane(position) != 0)
+                {
+                    position++;
+                }
+            }
+            return Math.min(position, count);
+        }
+
+        private int getNextLineTop()
+        {
+            // A new row starts below the lowest column, a staggered item goes in the column which ends highest
+            return layoutMode == LAYOUT_GRID ? getMaxEdge(laneEnds, 0, columnCount) : getMinEdge(laneEnds, 0, columnCount);
+        }
+
+        private static int getMaxEdge(int[] edges, int fromLane, int toLane)
+        {
+            int result = Integer.MIN_VALUE;
+            for (int i = fromLane; i < toLane; i++)
+            {
+                result = Math.max(result, edges[i]);
+            }
+            return result;
+        }
+
+        private static int getMinEdge(int[] edges, int fromLane, int toLane)
+        {
+            int result = Integer.MAX_VALUE;
+            for (int i = fromLane; i < toLane; i++)
+            {
+                result = Math.min(result, edges[i]);
+            }
+            return result;
+        }
+
+        private void moveLanes(int offset)
+        {
+            for (int i = 0; i < columnCount; i++)
+            {
+                laneStarts[i] += offset;
+                laneEnds[i] += offset;
+            }
+        }
+
+        private void measureLanes(int paddedHeightSize)
+        {
+            // Start a new window with even columns, a grid window always starts at the beginning of a row
+            int count = getReusableViewCount();
+            if (usingViews.size() == 0)
+            {
+                usingViewStartPosition = count > 0 ? getLineStart(Math.min(usingViewStartPosition, count - 1)) : 0;
+                Arrays.fill(laneStarts, usingViewStartY);
+            }
+            while (layoutMode == LAYOUT_GRID && usingViews.size() > 0 && usingViewStartPosition > 0 && getItemLane(usingViewStartPosition) != 0)
+            {
+                allocateLaneItem(usingViewStartPosition - 1);
+            }
+
+            // Bind empty or invalidated items, re-measure items which requested it or were measured for a different width
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                UsingView usingView = usingViews.get(i);
+                if (usingView == null || usingView.invalidated)
+                {
+                    allocateLaneItem(usingViewStartPosition + i);
+                    usingViews.get(i).invalidated = false;
+                }
+                else
+                {
+                    measureWindowItem(usingViewStartPosition + i, getCellMeasureSpec(usingViewStartPosition + i));
+                }
+            }
+            layoutLanes();
+
+            // Remove lines falling out of view, but only when the columns stay filled, otherwise they would be added again right away
+            int startY = Math.max(getPaddingTop(), getPaddingTop() + offsetY - getLookaheadBefore(offsetY));
+            int endY = getPaddingTop() + offsetY + paddedHeightSize + getLookaheadAfter(offsetY);
+            while (usingViews.size() > 0)
+            {
+                UsingView usingView = usingViews.get(0);
+                int lineSize = Math.min(getLineEnd(usingViewStartPosition), usingViewStartPosition + usingViews.size()) - usingViewStartPosition;
+                int fromLane = layoutMode == LAYOUT_GRID ? 0 : usingView.lane;
+                int toLane = layoutMode == LAYOUT_GRID ? columnCount : usingView.lane + getItemSpan(usingViewStartPosition);
+                int lineBottom = usingView.top;
+                for (int i = 0; i < lineSize; i++)
+                {
+                    lineBottom = Math.max(lineBottom, usingViews.get(i).top + usingViews.get(i).view.getMeasuredHeight());
+                }
+                if (lineBottom >= startY || Math.max(getMaxEdge(laneStarts, 0, fromLane), getMaxEdge(laneStarts, toLane, columnCount)) > startY)
+                {
+                    break;
+                }
+                for (int i = 0; i < lineSize; i++)
+                {
+                    recycleUsingView(usingViews.removeFirst());
+                    usingViewStartPosition++;
+                }
+                Arrays.fill(laneStarts, fromLane, toLane, lineBottom);
+            }
+            while (usingViews.size() > 0)
+            {
+                int lineStart = Math.max(usingViewStartPosition, getLineStart(usingViewStartPosition + usingViews.size() - 1));
+                UsingView usingView = usingViews.get(lineStart - usingViewStartPosition);
+                boolean removable = usingView.top >= endY;
+                if (removable && layoutMode == LAYOUT_STAGGERED)
+                {
+                    int span = getItemSpan(lineStart);
+                    for (int lane = 0; lane < columnCount && removable; lane++)
+                    {
+                        int laneEnd = lane >= usingView.lane && lane < usingView.lane + span ? getLaneEndBefore(usingViews.size() - 1, lane) : laneEnds[lane];
+                        removable = laneEnd >= endY;
+                    }
+                }
+                if (!removable)
+                {
+                    break;
+                }
+                while (usingViewStartPosition + usingViews.size() > lineStart)
+                {
+                    recycleUsingView(usingViews.removeLast());
+                }
+            }
+            layoutLanes();
+
+            // Add lines moving into view, below the lowest or highest column depending on the layout
+            while (usingViewStartPosition + usingViews.size() < count && getNextLineTop() < endY)
+            {
+                int position = usingViewStartPosition + usingViews.size();
+                int lineEnd = getLineEnd(position);
+                for (int i = position; i < lineEnd; i++)
+                {
+                    allocateLaneItem(i);
+                    placeLaneItem(i - usingViewStartPosition);
+                }
+            }
+            while (usingViewStartPosition > 0 && getMaxEdge(laneStarts, 0, columnCount) > startY)
+            {
+                int lineStart = getLineStart(usingViewStartPosition - 1);
+                for (int i = usingViewStartPosition - 1; i >= lineStart; i--)
+                {
+                    allocateLaneItem(i);
+                }
+                placeLaneLineBefore(usingViewStartPosition, getLineEnd(usingViewStartPosition));
+            }
+            layoutLanes();
+
+            // Move the columns back to the top when the first item is reached, scroll along to keep the first visible item in place
+            // Also move them down when the lines above the window turned out taller than estimated, the content above the top can't be scrolled to
+            // With anchored layout this waits until scrolling has stopped, like the list layout
+            boolean reachedStart = usingViewStartPosition == 0 && usingViews.size() > 0 && (getMinEdge(laneStarts, 0, columnCount) != 0 || getMaxEdge(laneStarts, 0, columnCount) != 0);
+            int laneOrigin = usingViews.size() > 0 ? getMinEdge(laneStarts, 0, columnCount) - getOffsetIndex().getOffset(usingViewStartPosition, getIndexEstimates()) : 0;
+            boolean aboveStart = !reachedStart && laneOrigin < 0;
+            if ((reachedStart && (!anchoredLayout || canReconcileOrigin())) || (aboveStart && canReconcileOrigin()))
+            {
+                int firstVisibleIndex = 0;
+                while (firstVisibleIndex < usingViews.size() - 1 && usingViews.get(firstVisibleIndex).top + usingViews.get(firstVisibleIndex).view.getMeasuredHeight() <= getPaddingTop() + offsetY)
+                {
+                    firstVisibleIndex++;
+                }
+                int previousTop = usingViews.get(firstVisibleIndex).top;
+                if (reachedStart)
+                {
+                    Arrays.fill(laneStarts, 0);
+                }
+                else
+                {
+                    moveLanes(-laneOrigin);
+                }
+                layoutLanes();
+                int scrollCorrection = usingViews.get(firstVisibleIndex).top - previousTop;
+                if (scrollCorrection != 0)
+                {
+                    correctionPasses++;
+                    if (pendingScrollY >= 0)
+                    {
+                        offsetY = Math.max(0, offsetY + scrollCorrection);
+                        pendingScrollY = offsetY;
+                    }
+                    else if (anchoredLayout || aboveStart)
+                    {
+                        offsetY += scrollCorrection;
+                        pendingScrollCorrection += scrollCorrection;
+                    }
+                    else
+                    {
+                        ScrollView parent = (ScrollView)getParent();
+                        parent.scrollTo(parent.getScrollX(), parent.getScrollY() + scrollCorrection);
+                    }
+                }
+            }
+            usingViewStartY = usingViews.size() > 0 ? getMinEdge(laneStarts, 0, columnCount) : usingViewStartY;
+        }
+
+        private int getCellMeasureSpec(int position)
+        {
+            return MeasureSpec.makeMeasureSpec(getItemWidth(position), MeasureSpec.EXACTLY);
+        }
+
+        private void allocateLaneItem(int position)
+        {
+            // Views taken from the recycle pool get the remembered column of the item, or are placed in a free column later
+            int index = position - usingViewStartPosition;
+            UsingView previousView = index >= 0 && index < usingViews.size() ? usingViews.get(index) : null;
+            allocateReusableView(position);
+            UsingView usingView = usingViews.get(position - usingViewStartPosition);
+            if (usingView != previousView)
+            {
+                usingView.lane = getItemLane(position);
+            }
+            measureWindowItem(position, getCellMeasureSpec(position));
+        }
+
+        private void placeLaneItem(int index)
+        {
+            // Place the item below the items before it in its columns, a staggered item without a column goes in the one which ends highest
+            int position = usingViewStartPosition + index;
+            UsingView usingView = usingViews.get(index);
+            int span = getItemSpan(position);
+            int top;
+            if (layoutMode == LAYOUT_GRID)
+            {
+                usingView.lane = getItemLane(position);
+                top = index == 0 || usingView.lane == 0 ? getMaxEdge(laneEnds, 0, columnCount) : usingViews.get(index - 1).top;
+            }
+            else
+            {
+                if (usingView.lane < 0 || usingView.lane + span > columnCount)
+                {
+                    usingView.lane = 0;
+                    for (int lane = 1; lane + span <= columnCount; lane++)
+                    {
+                        if (getMaxEdge(laneEnds, lane, lane + span) < getMaxEdge(laneEnds, usingView.lane, usingView.lane + span))
+                        {
+                            usingView.lane = lane;
+                        }
+                    }
+                }
+                storeItemLane(position, usingView.lane);
+                top = getMaxEdge(laneEnds, usingView.lane, usingView.lane + span);
+            }
+            usingView.top = top;
+            Arrays.fill(laneEnds, usingView.lane, usingView.lane + span, top + usingView.view.getMeasuredHeight());
+        }
+
+        private void placeLaneLineBefore(int fromPosition, int toPosition)
+        {
+            // Place a row above the first one, or a staggered item above the column which starts lowest
+            if (layoutMode == LAYOUT_GRID)
+            {
+                int lineHeight = 0;
+                for (int i = fromPosition; i < toPosition; i++)
+                {
+                    lineHeight = Math.max(lineHeight, usingViews.get(i - usingViewStartPosition).view.getMeasuredHeight());
+                }
+                int top = getMinEdge(laneStarts, 0, columnCount) - lineHeight;
+                for (int i = fromPosition; i < toPosition; i++)
+                {
+                    usingViews.get(i - usingViewStartPosition).top = top;
+                }
+                Arrays.fill(laneStarts, top);
+                return;
+            }
+            UsingView usingView = usingViews.get(fromPosition - usingViewStartPosition);
+            int span = getItemSpan(fromPosition);
+            if (usingView.lane < 0 || usingView.lane + span > columnCount)
+            {
+                usingView.lane = 0;
+                for (int lane = 1; lane + span <= columnCount; lane++)
+                {
+                    if (getMinEdge(laneStarts, lane, lane + span) > getMinEdge(laneStarts, usingView.lane, usingView.lane + span))
+                    {
+                        usingView.lane = lane;
+                    }
+                }
+            }
+            usingView.top = getMinEdge(laneStarts, usingView.lane, usingView.lane + span) - usingView.view.getMeasuredHeight();
+            Arrays.fill(laneStarts, usingView.lane, usingView.lane + span, usingView.top);
+        }
+
+        private void layoutLanes()
+        {
+            // Place all items of the window from the start of the columns, heights may have changed since they were added
+            System.arraycopy(laneStarts, 0, laneEnds, 0, columnCount);
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                placeLaneItem(i);
+            }
+        }
+
+        private int getLaneEndBefore(int index, int lane)
+        {
+            int laneEnd = laneStarts[lane];
+            for (int i = 0; i < index; i++)
+            {
+                UsingView usingView = usingViews.get(i);
+                if (lane >= usingView.lane && lane < usingView.lane + getItemSpan(usingViewStartPosition + i))
+                {
+                    laneEnd = Math.max(laneEnd, usingView.top + usingView.view.getMeasuredHeight());
+                }
+            }
+            return laneEnd;
+        }
+
+
+        // ---
+        // Reusable view creation
+        // ---
+
+        public void setOffsetY(int offsetY)
+        {
+            // Request a new layout pass if items are about to enter view (ignore views going to exit for performance)
+            int startY = Math.max(getPaddingTop(), getPaddingTop() + offsetY - getLookaheadBefore(offsetY));
+            int endY = getPaddingTop() + offsetY + ((View)getParent()).getHeight() + getLookaheadAfter(offsetY);
+            if (layoutMode != LAYOUT_LIST)
+            {
+                boolean hasBefore = usingViewStartPosition > 0 && startY < getMaxEdge(laneStarts, 0, columnCount);
+                boolean hasAfter = usingViewStartPosition + usingViews.size() < getReusableViewCount() && endY > getNextLineTop();
+                if (hasBefore || hasAfter)
+                {
+                    requestLayout();
+                }
+            }
+            else
+            {
+                int endItemY = usingViewStartY;
+                for (int i = usingViewStartPosition; i < usingViewStartPosition + usingViews.size(); i++)
+                {
+                    endItemY += getEstimatedHeight(i);
+                }
+                if (startY < usingViewStartY || endY > endItemY)
+                {
+                    requestLayout();
+                }
+            }
+
+            // Apply new offset
+            if (this.offsetY != offsetY)
+            {
+                lastOffsetChangeTime = SystemClock.uptimeMillis();
+            }
+            this.offsetY = offsetY;
+            updateStickyHeader();
+        }
+
+        public UniReusableView getReusableView(int position, boolean includeAll)
+        {
+            UsingView usingView = position >= usingViewStartPosition && position < usingViewStartPosition + usingViews.size() ? usingViews.get(position - usingViewStartPosition) : null;
+            if (usingView != null)
+            {
+                return usingView.view;
+            }
+            if (includeAll)
+            {
+                UniReusableView view = allocateReserveView(position);
+                return view;
+            }
+            return null;
+        }
+
+        private UniReusableView allocateReusableView(int position)
+        {
+            // Start a new window if the position isn't next to it, instead of filling the gap
+            if (position < usingViewStartPosition - 1 || position > usingViewStartPosition + usingViews.size())
+            {
+                usingViewStartY = getItemY(position);
+                usingViewStartPosition = position;
+                recycleUsingViews();
+            }
+
+            // Expand the window if there is no item for the position
+            if (position == usingViewStartPosition - 1)
+            {
+                usingViews.addFirst(null);
+                usingViewStartPosition = position;
+            }
+            else if (position == usingViewStartPosition + usingViews.size())
+            {
+                usingViews.addLast(null);
+            }
+
+            // Clear the view taking up the given position, or use the item already prepared for this position
+            int viewType = getReusableViewType(position);
+            UniReusableView reusableView = null;
+            UsingView usingView = usingViews.get(position - usingViewStartPosition);
+            if (usingView != null)
+            {
+                if (usingView.viewType == viewType)
+                {
+                    reusableView = usingView.view;
+                }
+                else
+                {
+                    recycleUsingView(usingView);
+                    usingViews.set(position - usingViewStartPosition, null);
+                }
+            }
+
+            // If not found, use the view prepared during a fling, take one from the recycle pool (preferably still showing this item) or create a new view
+            boolean prepared = false;
+            if (reusableView == null)
+            {
+                usingView = takePreparedView(position, viewType);
+                prepared = usingView != null;
+                if (usingView == null)
+                {
+                    matchBoundVersion = measureCache.getVersion(position);
+                    usingView = recyclePool.take(viewType, boundVersionMatcher);
+                }
+                if (usingView == null)
+                {
+                    usingView = createUsingView(viewType, false);
+                }
+                reusableView = usingView.view;
+                addView(reusableView);
+                usingViews.set(position - usingViewStartPosition, usingView);
+            }
+
+            // Populate (unless the view still shows the same content) and return result
+            reusableView.setItemPosition(position);
+            int version = measureCache.getVersion(position);
+            if (usingView.boundVersion != version)
+            {
+                updateReusableView(reusableView, viewType, position);
+                usingView.boundVersion = version;
+                usingView.measureSpec = UniMeasureCache.NO_WIDTH;
+            }
+            else if (!prepared)
+            {
+                updateReusableViewState(reusableView, position);
+            }
+            return reusableView;
+        }
+
+        private UniReusableView allocateReserveView(int position)
+        {
+            UniReusableView reusableView;
+            int viewType = getReusableViewType(position);
+            UsingView usingView = recyclePool.peek(viewType);
+            if (usingView == null)
+            {
+                usingView = createUsingView(viewType, false);
+                recyclePool.put(viewType, usingView);
+            }
+            reusableView = usingView.view;
+            int version = measureCache.getVersion(position);
+            if (usingView.boundVersion != version)
+            {
+                updateReusableView(reusableView, viewType, position);
+                usingView.boundVersion = version;
+            }
+            usingView.measureSpec = UniMeasureCache.NO_WIDTH;
+            return reusableView;
+        }
+
+        private UsingView createUsingView(int viewType, boolean ahead)
+        {
+            UsingView usingView = new UsingView();
+            UniReusableView reusableView = new UniReusableView(getContext());
+            reusableView.setLayoutParams(new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+            initReusableView(reusableView, viewType);
+            if (reusableView.getItemContainerView() != null)
+            {
+                reusableView.getItemContainerView().setOnClickListener(new OnClickListener()
+                {
+                    @Override
+                    public void onClick(View view)
+                    {
+                        if (view != null && view.getParent() instanceof UniReusableView)
+                        {
+                            onReusableViewClick((UniReusableView)view.getParent());
+                        }
+                    }
+                });
+            }
+            usingView.view = reusableView;
+            usingView.viewType = viewType;
+            recyclePool.countCreated(viewType, ahead);
+            return usingView;
+        }
+
+        private void insertIntoWindow(int itemPosition, int itemCount)
+        {
+            int index = itemPosition - usingViewStartPosition;
+            if (index < 0 || (index == 0 && offsetY > 0))
+            {
+                // Inserted before the window, move it down and keep the visible items in place by scrolling along (unless scrolled to the top)
+                int insertedHeight = getStoredHeight(itemPosition, itemPosition + itemCount);
+                usingViewStartPosition += itemCount;
+                usingViewStartY += insertedHeight;
+                moveLanes(insertedHeight);
+                offsetY += insertedHeight;
+                pendingScrollCorrection += insertedHeight;
+            }
+            else if (index < usingViews.size())
+            {
+                // Inserted inside the window, make room for the new items or drop the part which will be pushed out anyway
+                if (itemCount < usingViews.size() - index)
+                {
+                    for (int i = 0; i < itemCount; i++)
+                    {
+                        usingViews.add(index, null);
+                    }
+                }
+                else
+                {
+                    while (usingViews.size() > index)
+                    {
+                        recycleUsingView(usingViews.removeLast());
+                    }
+                }
+            }
+            updateWindowPositions();
+        }
+
+        private void removeFromWindow(int itemPosition, int itemCount)
+        {
+            // Recycle the views of removed items inside the window
+            int endPosition = itemPosition + itemCount;
+            int fromPosition = Math.max(itemPosition, usingViewStartPosition);
+            int toPosition = Math.min(endPosition, usingViewStartPosition + usingViews.size());
+            for (int i = toPosition - 1; i >= fromPosition; i--)
+            {
+                recycleUsingView(usingViews.remove(i - usingViewStartPosition));
+            }
+
+            // Move the window up for items removed before it, keep the visible items in place by scrolling along
+            if (itemPosition < usingViewStartPosition)
+            {
+                int removedCount = Math.min(endPosition, usingViewStartPosition) - itemPosition;
+                int removedHeight = getStoredHeight(itemPosition, itemPosition + removedCount);
+                usingViewStartPosition -= removedCount;
+                usingViewStartY -= removedHeight;
+                moveLanes(-removedHeight);
+                offsetY -= removedHeight;
+                pendingScrollCorrection -= removedHeight;
+            }
+            updateWindowPositions();
+        }
+
+        private void recycleUsingView(UsingView usingView)
+        {
+            if (usingView != null)
+            {
+                usingView.view.setItemPosition(-1);
+                removeView(usingView.view);
+                recyclePool.put(usingView.viewType, usingView);
+            }
+        }
+
+        private void updateWindowPositions()
+        {
+            // Keep the positions stored in the views up to date when the window moves because of changes before or inside it
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                UsingView usingView = usingViews.get(i);
+                if (usingView != null)
+                {
+                    usingView.view.setItemPosition(usingViewStartPosition + i);
+                }
+            }
+        }
+
+        private void recycleUsingViews()
+        {
+            for (UsingView usingView : usingViews)
+            {
+                recycleUsingView(usingView);
+            }
+            usingViews.clear();
+        }
+
+        private void onReusableViewClick(UniReusableView view)
+        {
+            if (adapter != null && view.getParent() == this)
+            {
+                int position = view.getItemPosition();
+                if (position >= 0 && isItemEnabled(position))
+                {
+                    adapter.setItemSelected(position, !isItemSelected(position));
+                }
+            }
+        }
+
+
+        // ---
+        // Custom layout
+        // ---
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+        {
+            // Determine available size without padding
+            int widthSpec = MeasureSpec.getMode(widthMeasureSpec);
+            int heightSpec = MeasureSpec.getMode(heightMeasureSpec);
+            int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+            int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+            int paddedWidthSize = widthSize - getPaddingLeft() - getPaddingRight();
+            int paddedHeightSize = heightSize - getPaddingTop() - getPaddingBottom();
+            measuredSize.x = getPaddingLeft();
+            measuredSize.y = getPaddingTop();
+            if (widthSpec == MeasureSpec.UNSPECIFIED) // Only do this for width, the height size will be needed for optimization reasons
+            {
+                paddedWidthSize = 0xFFFFFF;
+            }
+
+            // Obtain invalidated or empty items
+            int childWidthSpec = MeasureSpec.AT_MOST;
+            if (widthSpec == MeasureSpec.EXACTLY)
+            {
+                childWidthSpec = MeasureSpec.EXACTLY;
+            }
+            itemWidthSpec = MeasureSpec.makeMeasureSpec(paddedWidthSize, childWidthSpec);
+            itemWidth = paddedWidthSize;
+            if (measureCache.setActiveWidth(itemWidthSpec))
+            {
+                applyCachedSizes();
+            }
+            if (heightHintsInvalidated || heightHintsWidth != itemWidth)
+            {
+                heightHintsInvalidated = false;
+                heightHintsWidth = itemWidth;
+                applyHeightHints(0, itemMetadata.getCount());
+            }
+            if (anchorPosition >= 0)
+            {
+                applyScrollAnchor(paddedWidthSize, paddedHeightSize, childWidthSpec);
+            }
+            if (layoutMode != LAYOUT_LIST)
+            {
+                measureLanes(paddedHeightSize);
+                if (smoothAnchorPosition >= 0)
+                {
+                    checkSmoothScrollAnchor(paddedHeightSize);
+                }
+                scheduleIdleWork();
+
+                // The content ends at the lowest column of the window, the size of the items after it is estimated
+                int[] estimates = getIndexEstimates();
+                int windowEndPosition = usingViewStartPosition + usingViews.size();
+                int remainingHeight = getOffsetIndex().getTotalSize(estimates) - getOffsetIndex().getOffset(windowEndPosition, estimates);
+                measuredSize.x += widthSpec == MeasureSpec.UNSPECIFIED ? getOffsetIndex().getMaxCrossSize() : paddedWidthSize;
+                measuredSize.y += (usingViews.size() > 0 ? getMaxEdge(laneEnds, 0, columnCount) : 0) + remainingHeight;
+                setFinalMeasuredDimension(widthMeasureSpec, heightMeasureSpec);
+                return;
+            }
+            int firstVisibleIndex = anchoredLayout && pendingScrollY < 0 ? getFirstVisibleIndex() : -1;
+            int firstVisibleY = getWindowItemY(Math.max(0, firstVisibleIndex));
+            boolean corrected = false;
+
+            // Bind placeholders and invalidated items, or re-measure items which requested it or were measured for a different width
+            // Items nearest to the first visible item go first, in case the bind budget runs out before the rest
+            int bindAnchorIndex = Math.max(0, firstVisibleIndex >= 0 ? firstVisibleIndex : getFirstVisibleIndex());
+            int bindCorrection = 0;
+            startBindSlice();
+            for (int i = 0; bindAnchorIndex + i < usingViews.size() || bindAnchorIndex - i - 1 >= 0; i++)
+            {
+                if (bindAnchorIndex + i < usingViews.size())
+                {
+                    bindWindowItem(bindAnchorIndex + i, itemWidthSpec);
+                }
+                if (bindAnchorIndex - i - 1 >= 0)
+                {
+                    bindCorrection += bindWindowItem(bindAnchorIndex - i - 1, itemWidthSpec);
+                }
+            }
+            if (anchoredLayout)
+            {
+                bindCorrection = 0;
+            }
+
+            // With anchored layout, keep the first visible item in place by moving the start of the window instead
+            if (firstVisibleIndex >= 0 && firstVisibleIndex < usingViews.size())
+            {
+                int anchorCorrection = firstVisibleY - getWindowItemY(firstVisibleIndex);
+                if (anchorCorrection != 0)
+                {
+                    usingViewStartY += anchorCorrection;
+                    corrected = true;
+                }
+            }
+
+            // Determine range and remove items falling out of view
+            int startY = Math.max(getPaddingTop(), getPaddingTop() + offsetY - getLookaheadBefore(offsetY));
+            int endY = getPaddingTop() + offsetY + paddedHeightSize + getLookaheadAfter(offsetY);
+            int endItemY = usingViewStartY;
+            for (int i = usingViewStartPosition; i < usingViewStartPosition + usingViews.size(); i++)
+            {
+                endItemY += getEstimatedHeight(i);
+            }
+            while (usingViews.size() > 0 && usingViewStartY + getEstimatedHeight(usingViewStartPosition) < startY)
+            {
+                recycleUsingView(usingViews.removeFirst());
+                usingViewStartY += getEstimatedHeight(usingViewStartPosition);
+                usingViewStartPosition++;
+            }
+            while (usingViews.size() > 0 && endItemY - getEstimatedHeight(usingViewStartPosition + usingViews.size() - 1) >= endY)
+            {
+                endItemY -= getEstimatedHeight(usingViewStartPosition + usingViews.size() - 1);
+                recycleUsingView(usingViews.removeLast());
+            }
+
+            // Add items moving into view
+            int scrollCorrection = 0;
+            for (int i = usingViewStartPosition + usingViews.size(); i < getReusableViewCount(); i++)
+            {
+                if (endItemY >= endY)
+                {
+                    break;
+                }
+                if (!takeBindSlice())
+                {
+                    usingViews.addLast(null);
+                    endItemY += getEstimatedHeight(i);
+                    continue;
+                }
+                UniReusableView reusableView = allocateReusableView(i);
+                if (reusableView != null)
+                {
+                    measureWindowItem(i, itemWidthSpec);
+                    endItemY += reusableView.getMeasuredHeight();
+                }
+            }
+            for (int i = usingViewStartPosition - 1; i >= 0; i--)
+            {
+                if (usingViewStartY + getEstimatedHeight(usingViewStartPosition) + scrollCorrection <= startY)
+                {
+                    break;
+                }
+                if (!takeBindSlice())
+                {
+                    usingViews.addFirst(null);
+                    usingViewStartPosition = i;
+                    usingViewStartY -= getEstimatedHeight(i);
+                    continue;
+                }
+                UniReusableView reusableView = allocateReusableView(i);
+                if (reusableView != null)
+                {
+                    int previousHeight = getEstimatedHeight(i);
+                    measureWindowItem(i, itemWidthSpec);
+                    if (!anchoredLayout)
+                    {
+                        scrollCorrection += reusableView.getMeasuredHeight() - previousHeight;
+                    }
+                    usingViewStartY -= reusableView.getMeasuredHeight();
+                }
+            }
+
+            // Apply scroll correction (if needed), when jumping to an anchor it's part of the scroll position applied after layout
+            // With anchored layout the items above are placed upwards from the window instead, which moves the content origin
+            // Items bound above the first visible item also scroll along, they may be bound a few frames later with time-sliced binding
+            if (scrollCorrection != 0 || bindCorrection != 0)
+            {
+                corrected = true;
+                usingViewStartY += scrollCorrection;
+                if (pendingScrollY >= 0)
+                {
+                    offsetY += scrollCorrection + bindCorrection;
+                    pendingScrollY = offsetY;
+                }
+                else
+                {
+                    ScrollView parent = (ScrollView)getParent();
+                    parent.scrollTo(parent.getScrollX(), parent.getScrollY() + scrollCorrection + bindCorrection);
+                }
+            }
+            if (anchoredLayout && reconcileContentOrigin())
+            {
+                corrected = true;
+            }
+            if (corrected)
+            {
+                correctionPasses++;
+            }
+            if (smoothAnchorPosition >= 0)
+            {
+                checkSmoothScrollAnchor(paddedHeightSize);
+            }
+
+            // Continue binding in the next frame if the budget ran out, refill the recycle pool when views were taken from it
+            finishBindSlice();
+            scheduleIdleWork();
+
+            // Use sizes calculated earlier for container measurement, unmeasured items use the estimate of their view type
+            measuredSize.x += getOffsetIndex().getMaxCrossSize();
+            measuredSize.y += getOffsetIndex().getTotalSize(getIndexEstimates());
+            if (anchoredLayout)
+            {
+                measuredSize.y = Math.max(getPaddingTop(), measuredSize.y + getItemY(0));
+            }
+            setFinalMeasuredDimension(widthMeasureSpec, heightMeasureSpec);
+        }
+
+        private void setFinalMeasuredDimension(int widthMeasureSpec, int heightMeasureSpec)
+        {
+            // Adjust final measure with padding and limitations
+            int widthSpec = MeasureSpec.getMode(widthMeasureSpec);
+            int heightSpec = MeasureSpec.getMode(heightMeasureSpec);
+            int widthSize = MeasureSpec.getSize(widthMeasureSpec);
+            int heightSize = MeasureSpec.getSize(heightMeasureSpec);
+            measuredSize.x += getPaddingRight();
+            measuredSize.y += getPaddingBottom();
+            if (widthSpec == MeasureSpec.EXACTLY)
+            {
+                measuredSize.x = widthSize;
+            }
+            else if (widthSpec == MeasureSpec.AT_MOST)
+            {
+                measuredSize.x = Math.min(measuredSize.x, widthSize);
+            }
+            if (heightSpec == MeasureSpec.EXACTLY)
+            {
+                measuredSize.y = heightSize;
+            }
+            else if (heightSpec == MeasureSpec.AT_MOST)
+            {
+                measuredSize.y = Math.min(measuredSize.y, heightSize);
+            }
+            setMeasuredDimension(measuredSize.x, measuredSize.y);
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom)
+        {
+            if (layoutMode != LAYOUT_LIST)
+            {
+                for (int i = 0; i < usingViews.size(); i++)
+                {
+                    UsingView usingView = usingViews.get(i);
+                    if (usingView != null)
+                    {
+                        int x = getLaneX(usingView.lane);
+                        usingView.view.layout(x, usingView.top, x + usingView.view.getMeasuredWidth(), usingView.top + usingView.view.getMeasuredHeight());
+                    }
+                }
+                return;
+            }
+            int y = usingViewStartY;
+            for (int i = 0; i < usingViews.size(); i++)
+            {
+                UsingView usingView = usingViews.get(i);
+                if (usingView != null)
+                {
+                    usingView.view.layout(0, y, usingView.view.getMeasuredWidth(), y + usingView.view.getMeasuredHeight());
+                }
+                y += getEstimatedHeight(usingViewStartPosition + i);
+            }
+            updateStickyHeader();
+        }
+    }
+
+
+    // ---
+    // A view type utility
+    // ---
+
+    private static class UsingView
+    {
+        private int viewType;
+        private int boundVersion;
+        private int measureSpec = UniMeasureCache.NO_WIDTH;
+        private UniReusableView view;
+        private boolean invalidated;
+        private int lane = -1;
+        private int top;
+    }
+
+
+    // ---
+    // Adapter to create reusable views
+    // ---
+
+    public static abstract class Adapter
+    {
+        public static final long NO_ID = -1;
+        public static final int NO_HEIGHT_HINT = -1;
+        public static final long NO_CONTENT_VERSION = UniMeasureCache.NO_CONTENT_VERSION;
+        public static final int BATCH_INSERT = 0;
+        public static final int BATCH_REMOVE = 1;
+        public static final int BATCH_MOVE = 2;
+        private List<DataSetChangedListener> dataSetChangedListeners = new ArrayList<>();
+        private UniBitSet itemsSelected = new UniBitSet();
+        private UniBitSet itemsDisabled = new UniBitSet();
+        private long[] itemIds;
+        private int itemIdCount;
+        private boolean batchItemIdsMissing;
+        private int selectedPosition = -1;
+        private UniBitSet batchChangedItems = new UniBitSet();
+        private UniBitSet batchStateChangedItems = new UniBitSet();
+        private int[] batchOperations = new int[0];
+        private int batchOperationCount;
+        private int batchDepth;
+        private boolean batchDataSetChanged;
+        private int itemSwipedOpen = -1;
+        private int lastSelectedPosition = -1;
+
+        public abstract int getItemCount();
+
+        public boolean hasStableIds()
+        {
+            return false;
+        }
+
+        public long getItemId(int itemPosition)
+        {
+            return NO_ID;
+        }
+
+        public boolean hasContentVersions()
+        {
+            return false;
+        }
+
+        public long getItemContentVersion(int itemPosition)
+        {
+            return NO_CONTENT_VERSION;
+        }
+
+        public boolean hasHeightHints()
+        {
+            return false;
+        }
+
+        public int getItemHeightHint(int itemPosition, int width)
+        {
+            return getFixedHeight(getItemViewTypeId(itemPosition));
+        }
+
+        public abstract View onCreateView(UniReusableView container, int viewTypeId);
+
+        public abstract void onUpdateView(UniReusableView container, View view, int viewTypeId, int itemPosition);
+
+        public View onCreateUnderView(UniReusableView container, int viewTypeId)
+        {
+            return null;
+        }
+
+        public void onUpdateUnderView(UniReusableView container, View view, int viewTypeId, int itemPosition)
+        {
+        }
+
+        public int getItemViewTypeId(int itemPosition)
+        {
+            return 0;
+        }
+
+        public int getFixedHeight(int viewTypeId)
+        {
+            return NO_HEIGHT_HINT;
+        }
+
+        public int getSectionForPosition(int itemPosition)
+        {
+            return -1;
+        }
+
+        public boolean isHeaderItem(int itemPosition)
+        {
+            return false;
+        }
+
+        public int getItemSpanSize(int itemPosition, int columnCount)
+        {
+            return 1;
+        }
+
+        public String getSectionTitle(int section)
+        {
+            return null;
+        }
+
+        public int getSectionCount()
+        {
+            return 0;
+        }
+
+        public int getPositionForSection(int section)
+        {
+            // Search for the first item of the section, this assumes sections are in ascending order
+            int low = 0;
+            int high = getItemCount();
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (getSectionForPosition(mid) < section)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+            return low < getItemCount() && getSectionForPosition(low) == section ? low : -1;
+        }
+
+        public void onSelectionChanged(int itemPosition, boolean selected)
+        {
+        }
+
+        public void setItemSelected(int itemPosition, boolean selected)
+        {
+            if (itemsSelected.set(itemPosition, selected))
+            {
+                lastSelectedPosition = selected ? itemPosition : lastSelectedPosition;
+                updateSelectedPosition(itemPosition, selected);
+                onSelectionChanged(itemPosition, selected);
+                notifyItemStateChanged(itemPosition);
+            }
+        }
+
+        public void setItemRangeSelected(int itemPosition, int itemCount, boolean selected)
+        {
+            int fromPosition = Math.max(0, itemPosition);
+            int toPosition = Math.min(itemsSelected.getCount(), itemPosition + itemCount);
+            boolean changed = false;
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                if ((!selected || isItemEnabled(i)) && itemsSelected.set(i, selected))
+                {
+                    lastSelectedPosition = selected ? i : lastSelectedPosition;
+                    updateSelectedPosition(i, selected);
+                    onSelectionChanged(i, selected);
+                    changed = true;
+                }
+            }
+            if (changed)
+            {
+                notifyItemRangeStateChanged(fromPosition, toPosition - fromPosition);
+            }
+        }
+
+        public void selectAll()
+        {
+            setItemRangeSelected(0, itemsSelected.getCount(), true);
+        }
+
+        public void setItemEnabled(int itemPosition, boolean enabled)
+        {
+            if (itemsDisabled.set(itemPosition, !enabled))
+            {
+                notifyItemStateChanged(itemPosition);
+            }
+        }
+
+        public void setItemRangeEnabled(int itemPosition, int itemCount, boolean enabled)
+        {
+            int fromPosition = Math.max(0, itemPosition);
+            int toPosition = Math.min(itemsDisabled.getCount(), itemPosition + itemCount);
+            boolean changed = false;
+            for (int i = fromPosition; i < toPosition; i++)
+            {
+                changed |= itemsDisabled.set(i, !enabled);
+            }
+            if (changed)
+            {
+                notifyItemRangeStateChanged(fromPosition, toPosition - fromPosition);
+            }
+        }
+
+        public boolean isItemSelected(int itemPosition)
+        {
+            return itemsSelected.get(itemPosition);
+        }
+
+        public boolean isItemEnabled(int itemPosition)
+        {
+            return !itemsDisabled.get(itemPosition);
+        }
+
+        public int getSelectedCount()
+        {
+            return itemsSelected.getCardinality();
+        }
+
+        public int getSelectedPosition()
+        {
+            if (itemsSelected.getCardinality() == 1 && selectedPosition >= 0)
+            {
+                return selectedPosition;
+            }
+            return itemsSelected.nextSetBit(0);
+        }
+
+        public int getNextSelectedPosition(int fromPosition)
+        {
+            return itemsSelected.nextSetBit(fromPosition);
+        }
+
+        public int getLastSelectedPosition()
+        {
+            // The item selected most recently, if it's still selected
+            return lastSelectedPosition >= 0 && itemsSelected.get(lastSelectedPosition) ? lastSelectedPosition : -1;
+        }
+
+        public void selectOnly(int itemPosition)
+        {
+            // With a single selection, the previously selected item is known without searching
+            int previousPosition = selectedPosition;
+            if (itemsSelected.getCardinality() == 2 && previousPosition != itemPosition && itemsSelected.get(previousPosition) && itemsSelected.get(itemPosition))
+            {
+                setItemSelected(previousPosition, false);
+                return;
+            }
+            for (int i = itemsSelected.nextSetBit(0); i >= 0; i = itemsSelected.nextSetBit(i + 1))
+            {
+                if (i != itemPosition)
+                {
+                    setItemSelected(i, false);
+                }
+            }
+        }
+
+        public void clearSelections()
+        {
+            for (int i = itemsSelected.nextSetBit(0); i >= 0; i = itemsSelected.nextSetBit(i + 1))
+            {
+                setItemSelected(i, false);
+            }
+        }
+
+        private void updateSelectedPosition(int itemPosition, boolean selected)
+        {
+            // Keeps the position of the only selected item, when a second one is selected it stays at the first one until resolved
+            int count = itemsSelected.getCardinality();
+            if (selected && count == 1)
+            {
+                selectedPosition = itemPosition;
+            }
+            else if (!selected && count == 1 && selectedPosition == itemPosition)
+            {
+                selectedPosition = itemsSelected.nextSetBit(0);
+            }
+            else if (count == 0)
+            {
+                selectedPosition = -1;
+            }
+        }
+
+        private void refreshSelectedPosition()
+        {
+            selectedPosition = itemsSelected.getCardinality() == 1 ? itemsSelected.nextSetBit(0) : -1;
+        }
+
+        private static int getInsertedPosition(int position, int itemPosition, int itemCount)
+        {
+            return position >= itemPosition ? position + itemCount : position;
+        }
+
+        private static int getRemovedPosition(int position, int itemPosition, int itemCount)
+        {
+            if (position >= itemPosition + itemCount)
+            {
+                return position - itemCount;
+            }
+            return position >= itemPosition ? -1 : position;
+        }
+
+        private static int getMovedPosition(int position, int fromPosition, int toPosition)
+        {
+            if (position == fromPosition)
+            {
+                return toPosition;
+            }
+            else if (fromPosition < toPosition && position > fromPosition && position <= toPosition)
+            {
+                return position - 1;
+            }
+            else if (fromPosition > toPosition && position >= toPosition && position < fromPosition)
+            {
+                return position + 1;
+            }
+            return position;
+        }
+
+        public void performBatchUpdates(Runnable updates)
+        {
+            beginUpdates();
+            try
+            {
+                updates.run();
+            }
+            finally
+            {
+                endUpdates();
+            }
+        }
+
+        public void beginUpdates()
+        {
+            // Collect notifications until the matching endUpdates call, batches can be nested
+            if (batchDepth == 0)
+            {
+                batchChangedItems.reset(getItemCount());
+                batchStateChangedItems.reset(getItemCount());
+                batchOperationCount = 0;
+                batchDataSetChanged = false;
+            }
+            batchDepth++;
+        }
+
+        public void endUpdates()
+        {
+            if (batchDepth == 0 || --batchDepth > 0)
+            {
+                return;
+            }
+
+            // Collect the ids of items inserted during the batch, the data is final now
+            if (batchItemIdsMissing)
+            {
+                batchItemIdsMissing = false;
+                if (!batchDataSetChanged)
+                {
+                    collectMissingItemIds();
+                }
+            }
+
+            // Hand the whole batch to the listeners at once, a data set change replaces the other updates
+            // With stable ids the operations are still applied first, the ids and item states were already moved along by them during the batch and are remapped from there
+            boolean dataSetChanged = batchDataSetChanged;
+            batchDataSetChanged = false;
+            if (dataSetChanged)
+            {
+                batchOperationCount = hasStableIds() ? batchOperationCount : 0;
+                batchChangedItems.reset(0);
+                batchStateChangedItems.reset(0);
+            }
+            if (batchOperationCount > 0 || batchChangedItems.getCardinality() > 0 || batchStateChangedItems.getCardinality() > 0)
+            {
+                for (DataSetChangedListener listener : dataSetChangedListeners)
+                {
+                    if (listener instanceof DataSetRangeChangedListener)
+                    {
+                        ((DataSetRangeChangedListener)listener).onDataBatchApplied(batchOperations, batchOperationCount, batchChangedItems, batchStateChangedItems);
+                    }
+                    else if (!dataSetChanged)
+                    {
+                        listener.onDataSetChanged();
+                    }
+                }
+            }
+            batchOperationCount = 0;
+            batchChangedItems.reset(0);
+            batchStateChangedItems.reset(0);
+            if (dataSetChanged)
+            {
+                notifyDataSetChanged();
+            }
+        }
+
+        private void addBatchOperation(int type, int first, int second)
+        {
+            if (batchOperationCount * 3 + 3 > batchOperations.length)
+            {
+                batchOperations = Arrays.copyOf(batchOperations, Math.max(24, batchOperations.length * 2));
+            }
+            batchOperations[batchOperationCount * 3] = type;
+            batchOperations[batchOperationCount * 3 + 1] = first;
+            batchOperations[batchOperationCount * 3 + 2] = second;
+            batchOperationCount++;
+        }
+
+        public void notifyDataSetChanged()
+        {
+            // Within a batch, this replaces all other updates at the end
+            if (batchDepth > 0)
+            {
+                batchDataSetChanged = true;
+                return;
+            }
+
+            // With stable ids, the state and measured sizes follow the items to their new positions
+            int[] previousPositions = hasStableIds() ? mapPreviousPositions() : null;
+            if (previousPositions != null)
+            {
+                itemsSelected.remap(previousPositions);
+                itemsDisabled.remap(previousPositions);
+                refreshSelectedPosition();
+                int swipedOpen = itemSwipedOpen;
+                int lastSelected = lastSelectedPosition;
+                itemSwipedOpen = -1;
+                lastSelectedPosition = -1;
+                for (int i = 0; i < previousPositions.length; i++)
+                {
+                    if (swipedOpen >= 0 && previousPositions[i] == swipedOpen)
+                    {
+                        itemSwipedOpen = i;
+                    }
+                    if (lastSelected >= 0 && previousPositions[i] == lastSelected)
+                    {
+                        lastSelectedPosition = i;
+                    }
+                }
+                for (DataSetChangedListener listener : dataSetChangedListeners)
+                {
+                    if (listener instanceof DataSetRangeChangedListener)
+                    {
+                        ((DataSetRangeChangedListener)listener).onDataSetRemapped(previousPositions);
+                    }
+                    else
+                    {
+                        listener.onDataSetChanged();
+                    }
+                }
+                return;
+            }
+
+            // Otherwise start over
+            for (DataSetChangedListener listener : dataSetChangedListeners)
+            {
+                listener.onDataSetChanged();
+            }
+            itemsSelected.reset(getItemCount());
+            itemsDisabled.reset(getItemCount());
+            selectedPosition = -1;
+            lastSelectedPosition = -1;
+        }
+
+        public void notifyItemChanged(int itemPosition)
+        {
+            if (batchDepth > 0)
+            {
+                batchChangedItems.set(itemPosition, true);
+                return;
+            }
+            for (DataSetChangedListener listener : dataSetChangedListeners)
+            {
+                listener.onDataItemChanged(itemPosition);
+            }
+        }
+
+        public void notifyItemRangeChanged(int itemPosition, int itemCount)
+        {
+            if (batchDepth > 0)
+            {
+                for (int i = 0; i < itemCount; i++)
+                {
+                    batchChangedItems.set(itemPosition + i, true);
+                }
+                return;
+            }
+            for (DataSetChangedListener listener : dataSetChangedListeners)
+            {
+                if (listener instanceof DataSetRangeChangedListener)
+                {
+                    ((DataSetRangeChangedListener)listener).onDataItemRangeChanged(itemPosition, itemCount);
+                }
+                else
+                {
+                    for (int i = 0; i < itemCount; i++)
+                    {
+                        listener.onDataItemChanged(itemPosition + i);
+                    }
                 }
-                usingView.view = reusableView;
-                usingView.viewType = viewType;
-                usingViews.set(position - usingViewStartPosition, usingView);
             }
+        }
 
-            // Populate and return result
-            updateReusableView(reusableView, viewType, position);
-            return reusableView;
+        public void notifyItemRangeInserted(int itemPosition, int itemCount)
+        {
+            itemsSelected.insert(itemPosition, itemCount);
+            itemsDisabled.insert(itemPosition, itemCount);
+            refreshSelectedPosition();
+            itemSwipedOpen = getInsertedPosition(itemSwipedOpen, itemPosition, itemCount);
+            lastSelectedPosition = getInsertedPosition(lastSelectedPosition, itemPosition, itemCount);
+            insertItemIds(itemPosition, itemCount);
+            if (batchDepth > 0)
+            {
+                batchChangedItems.insert(itemPosition, itemCount);
+                batchStateChangedItems.insert(itemPosition, itemCount);
+                addBatchOperation(BATCH_INSERT, itemPosition, itemCount);
+                return;
+            }
+            dispatchItemRangeInserted(itemPosition, itemCount);
         }
 
-        private UniReusableView allocateReserveView(int position)
+        private void dispatchItemRangeInserted(int itemPosition, int itemCount)
         {
-            UniReusableView reusableView;
-            UsingView usingView = null;
-            String viewType = getReusableViewType(position);
-            for (UsingView checkUsingView : reserveViews)
+            for (DataSetChangedListener listener : dataSetChangedListeners)
             {
-                if (checkUsingView.viewType.equals(viewType))
+                if (listener instanceof DataSetRangeChangedListener)
                 {
-                    usingView = checkUsingView;
-                    break;
+                    ((DataSetRangeChangedListener)listener).onDataItemRangeInserted(itemPosition, itemCount);
                 }
-            }
-            if (usingView == null)
-            {
-                usingView = new UsingView();
-                reusableView = new UniReusableView(getContext());
-                reusableView.setLayoutParams(new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
-                initReusableView(reusableView, viewType);
-                usingView.view = reusableView;
-                usingView.viewType = viewType;
-                if (reusableView.getItemContainerView() != null)
+                else
                 {
-                    reusableView.getItemContainerView().setOnClickListener(new OnClickListener()
-                    {
-                        @Override
-                        public void onClick(View view)
-                        {
-                            if (view != null && view.getParent() instanceof UniReusableView)
-                            {
-                                onReusableViewClick((UniReusableView)view.getParent());
-                            }
-                        }
-                    });
+                    listener.onDataSetChanged();
                 }
-                reserveViews.add(usingView);
             }
-            else
+        }
+
+        public void notifyItemRangeRemoved(int itemPosition, int itemCount)
+        {
+            itemsSelected.remove(itemPosition, itemCount);
+            itemsDisabled.remove(itemPosition, itemCount);
+            refreshSelectedPosition();
+            itemSwipedOpen = getRemovedPosition(itemSwipedOpen, itemPosition, itemCount);
+            lastSelectedPosition = getRemovedPosition(lastSelectedPosition, itemPosition, itemCount);
+            removeItemIds(itemPosition, itemCount);
+            if (batchDepth > 0)
             {
-                reusableView = usingView.view;
+                batchChangedItems.remove(itemPosition, itemCount);
+                batchStateChangedItems.remove(itemPosition, itemCount);
+                addBatchOperation(BATCH_REMOVE, itemPosition, itemCount);
+                return;
             }
-            updateReusableView(reusableView, viewType, position);
-            return reusableView;
+            dispatchItemRangeRemoved(itemPosition, itemCount);
         }
 
-        private void onReusableViewClick(UniReusableView view)
+        private void dispatchItemRangeRemoved(int itemPosition, int itemCount)
         {
-            if (getParent() instanceof UniReusingContainer && adapter != null)
+            for (DataSetChangedListener listener : dataSetChangedListeners)
             {
-                int position = ((UniReusingContainer)getParent()).getAdapterPosition(view);
-                if (isItemEnabled(position))
+                if (listener instanceof DataSetRangeChangedListener)
                 {
-                    adapter.setItemSelected(position, !isItemSelected(position));
+                    ((DataSetRangeChangedListener)listener).onDataItemRangeRemoved(itemPosition, itemCount);
+                }
+                else
+                {
+                    listener.onDataSetChanged();
                 }
             }
         }
 
-
-        // ---
-        // Custom layout
-        // ---
-
-        @Override
-        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+        public void notifyItemMoved(int fromPosition, int toPosition)
         {
-            // Determine available size without padding
-            int widthSpec = MeasureSpec.getMode(widthMeasureSpec);
-            int heightSpec = MeasureSpec.getMode(heightMeasureSpec);
-            int widthSize = MeasureSpec.getSize(widthMeasureSpec);
-            int heightSize = MeasureSpec.getSize(heightMeasureSpec);
-            int paddedWidthSize = widthSize - getPaddingLeft() - getPaddingRight();
-            int paddedHeightSize = heightSize - getPaddingTop() - getPaddingBottom();
-            measuredSize.x = getPaddingLeft();
-            measuredSize.y = getPaddingTop();
-            if (widthSpec == MeasureSpec.UNSPECIFIED) // Only do this for width, the height size will be needed for optimization reasons
+            itemsSelected.move(fromPosition, toPosition);
+            itemsDisabled.move(fromPosition, toPosition);
+            refreshSelectedPosition();
+            itemSwipedOpen = getMovedPosition(itemSwipedOpen, fromPosition, toPosition);
+            lastSelectedPosition = getMovedPosition(lastSelectedPosition, fromPosition, toPosition);
+            moveItemId(fromPosition, toPosition);
+            if (batchDepth > 0)
             {
-                paddedWidthSize = 0xFFFFFF;
+                batchChangedItems.move(fromPosition, toPosition);
+                batchStateChangedItems.move(fromPosition, toPosition);
+                addBatchOperation(BATCH_MOVE, fromPosition, toPosition);
+                return;
             }
+            dispatchItemMoved(fromPosition, toPosition);
+        }
 
-            // Obtain invalidated or empty items
-            int childWidthSpec = MeasureSpec.AT_MOST;
-            if (widthSpec == MeasureSpec.EXACTLY)
-            {
-                childWidthSpec = MeasureSpec.EXACTLY;
-            }
-            for (int i = 0; i < usingViews.size(); i++)
+        private void dispatchItemMoved(int fromPosition, int toPosition)
+        {
+            for (DataSetChangedListener listener : dataSetChangedListeners)
             {
-                if (usingViews.get(i) == null || usingViews.get(i).invalidated)
+                if (listener instanceof DataSetRangeChangedListener)
                 {
-                    UniReusableView reusableView = allocateReusableView(usingViewStartPosition + i);
-                    if (reusableView != null)
-                    {
-                        reusableView.measure(MeasureSpec.makeMeasureSpec(paddedWidthSize, childWidthSpec), MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
-                        setLastMeasuredSize(usingViewStartPosition + i, reusableView.getMeasuredWidth(), reusableView.getMeasuredHeight());
-                        usingViews.get(i).invalidated = false;
-                    }
+                    ((DataSetRangeChangedListener)listener).onDataItemMoved(fromPosition, toPosition);
                 }
-            }
-
-            // Re-measure items in view
-            for (int i = 0; i < usingViews.size(); i++)
-            {
-                if (usingViews.get(i) != null)
+                else
                 {
-                    UniReusableView reusableView = usingViews.get(i).view;
-                    if (reusableView.isLayoutRequested())
-                    {
-                        reusableView.measure(MeasureSpec.makeMeasureSpec(paddedWidthSize, childWidthSpec), MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
-                        setLastMeasuredSize(usingViewStartPosition + i, reusableView.getMeasuredWidth(), reusableView.getMeasuredHeight());
-                        usingViews.get(i).invalidated = false;
-                    }
+                    listener.onDataSetChanged();
                 }
             }
+        }
 
-            // Determine range and remove items falling out of view
-            int startY = Math.max(getPaddingTop(), getPaddingTop() + offsetY - extraMarginY);
-            int endY = getPaddingTop() + offsetY + paddedHeightSize + extraMarginY;
-            int endItemY = usingViewStartY;
-            for (int i = usingViewStartPosition; i < usingViewStartPosition + usingViews.size(); i++)
+        public void notifyItemStateChanged(int itemPosition)
+        {
+            if (batchDepth > 0)
             {
-                endItemY += getEstimatedHeight(i);
+                batchStateChangedItems.set(itemPosition, true);
+                return;
             }
-            while (usingViews.size() > 0 && usingViewStartY + getEstimatedHeight(usingViewStartPosition) < startY)
+            for (DataSetChangedListener listener : dataSetChangedListeners)
             {
-                UsingView usingView = usingViews.get(0);
-                if (usingView != null)
-                {
-                    reserveViews.add(usingView);
-                    removeView(usingView.view);
-                }
-                usingViews.remove(0);
-                usingViewStartY += getEstimatedHeight(usingViewStartPosition);
-                usingViewStartPosition++;
+                listener.onDataItemStateChanged(itemPosition);
             }
-            while (usingViews.size() > 0 && endItemY - getEstimatedHeight(usingViewStartPosition + usingViews.size() - 1) >= endY)
+        }
+
+        public void notifyItemRangeStateChanged(int itemPosition, int itemCount)
+        {
+            if (batchDepth > 0)
             {
-                UsingView usingView = usingViews.get(usingViews.size() - 1);
-                endItemY -= getEstimatedHeight(usingViewStartPosition + usingViews.size() - 1);
-                if (usingView != null)
+                for (int i = 0; i < itemCount; i++)
                 {
-                    reserveViews.add(usingView);
-                    removeView(usingView.view);
+                    batchStateChangedItems.set(itemPosition + i, true);
                 }
-                usingViews.remove(usingViews.size() - 1);
+                return;
             }
-
-            // Add items moving into view
-            int scrollCorrection = 0;
-            for (int i = usingViewStartPosition + usingViews.size(); i < getReusableViewCount(); i++)
+            for (DataSetChangedListener listener : dataSetChangedListeners)
             {
-                if (endItemY >= endY)
+                if (listener instanceof DataSetRangeChangedListener)
                 {
-                    break;
+                    ((DataSetRangeChangedListener)listener).onDataItemRangeStateChanged(itemPosition, itemCount);
                 }
-                UniReusableView reusableView = allocateReusableView(i);
-                if (reusableView != null)
+                else
                 {
-                    reusableView.measure(MeasureSpec.makeMeasureSpec(paddedWidthSize, childWidthSpec), MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
-                    endItemY += reusableView.getMeasuredHeight();
-                    setLastMeasuredSize(i, reusableView.getMeasuredWidth(), reusableView.getMeasuredHeight());
+                    for (int i = 0; i < itemCount; i++)
+                    {
+                        listener.onDataItemStateChanged(itemPosition + i);
+                    }
                 }
             }
-            for (int i = usingViewStartPosition - 1; i >= 0; i--)
+        }
+
+        private int[] mapPreviousPositions()
+        {
+            // Find the previous position of each item by its id, only possible if ids were collected before
+            int count = getItemCount();
+            long[] newItemIds = new long[count];
+            for (int i = 0; i < count; i++)
             {
-                if (usingViewStartY + getEstimatedHeight(usingViewStartPosition) + scrollCorrection <= startY)
+                newItemIds[i] = getItemId(i);
+            }
+            int[] previousPositions = null;
+            if (itemIds != null)
+            {
+                Map<Long, Integer> positionsById = new HashMap<>(itemIdCount * 2);
+                for (int i = 0; i < itemIdCount; i++)
                 {
-                    break;
+                    if (itemIds[i] != NO_ID)
+                    {
+                        positionsById.put(itemIds[i], i);
+                    }
                 }
-                UniReusableView reusableView = allocateReusableView(i);
-                if (reusableView != null)
+                previousPositions = new int[count];
+                for (int i = 0; i < count; i++)
                 {
-                    int previousHeight = getEstimatedHeight(i);
-                    reusableView.measure(MeasureSpec.makeMeasureSpec(paddedWidthSize, childWidthSpec), MeasureSpec.makeMeasureSpec(0xFFFFFF, MeasureSpec.UNSPECIFIED));
-                    scrollCorrection += reusableView.getMeasuredHeight() - previousHeight;
-                    usingViewStartY -= reusableView.getMeasuredHeight();
-                    setLastMeasuredSize(i, reusableView.getMeasuredWidth(), reusableView.getMeasuredHeight());
+                    Integer previousPosition = newItemIds[i] != NO_ID ? positionsById.remove(newItemIds[i]) : null;
+                    previousPositions[i] = previousPosition != null ? previousPosition : -1;
                 }
             }
+            itemIds = newItemIds;
+            itemIdCount = count;
+            return previousPositions;
+        }
 
-            // Apply scroll correction (if needed)
-            if (scrollCorrection != 0)
+        private void insertItemIds(int itemPosition, int itemCount)
+        {
+            // Shift the ids in place like the state bitsets, new items get their id right away or at the end of a batch
+            if (itemIds == null || itemPosition < 0 || itemPosition > itemIdCount || itemCount <= 0)
             {
-                ScrollView parent = (ScrollView)getParent();
-                usingViewStartY += scrollCorrection;
-                parent.scrollTo(parent.getScrollX(), parent.getScrollY() + scrollCorrection);
+                return;
             }
-
-            // Use sizes calculated earlier for container measurement
-            int viewCount = getReusableViewCount();
-            int maxWidth = 0;
-            for (int i = 0; i < viewCount; i++)
+            if (itemIdCount + itemCount > itemIds.length)
+            {
+                itemIds = Arrays.copyOf(itemIds, Math.max(itemIdCount + itemCount, itemIds.length + itemIds.length / 2));
+            }
+            System.arraycopy(itemIds, itemPosition, itemIds, itemPosition + itemCount, itemIdCount - itemPosition);
+            itemIdCount += itemCount;
+            for (int i = itemPosition; i < itemPosition + itemCount; i++)
             {
-                maxWidth = Math.max(maxWidth, getLastMeasuredWidth(i));
-                measuredSize.y += getEstimatedHeight(i);
+                itemIds[i] = batchDepth > 0 ? NO_ID : getItemId(i);
             }
-            measuredSize.x += maxWidth;
+            batchItemIdsMissing |= batchDepth > 0;
+        }
 
-            // Adjust final measure with padding and limitations
-            measuredSize.x += getPaddingRight();
-            measuredSize.y += getPaddingBottom();
-            if (widthSpec == MeasureSpec.EXACTLY)
+        private void removeItemIds(int itemPosition, int itemCount)
+        {
+            itemCount = Math.min(itemCount, itemIdCount - itemPosition);
+            if (itemIds == null || itemPosition < 0 || itemCount <= 0)
             {
-                measuredSize.x = widthSize;
+                return;
             }
-            else if (widthSpec == MeasureSpec.AT_MOST)
+            System.arraycopy(itemIds, itemPosition + itemCount, itemIds, itemPosition, itemIdCount - itemPosition - itemCount);
+            itemIdCount -= itemCount;
+        }
+
+        private void moveItemId(int fromPosition, int toPosition)
+        {
+            if (itemIds == null || fromPosition < 0 || fromPosition >= itemIdCount || toPosition < 0 || toPosition >= itemIdCount || fromPosition == toPosition)
             {
-                measuredSize.x = Math.min(measuredSize.x, widthSize);
+                return;
             }
-            if (heightSpec == MeasureSpec.EXACTLY)
+            long itemId = itemIds[fromPosition];
+            if (fromPosition < toPosition)
             {
-                measuredSize.y = heightSize;
+                System.arraycopy(itemIds, fromPosition + 1, itemIds, fromPosition, toPosition - fromPosition);
             }
-            else if (heightSpec == MeasureSpec.AT_MOST)
+            else
             {
-                measuredSize.y = Math.min(measuredSize.y, heightSize);
+                System.arraycopy(itemIds, toPosition, itemIds, toPosition + 1, fromPosition - toPosition);
             }
-            setMeasuredDimension(measuredSize.x, measuredSize.y);
+            itemIds[toPosition] = itemId;
         }
 
-        @Override
-        protected void onLayout(boolean changed, int left, int top, int right, int bottom)
+        private void collectMissingItemIds()
         {
-            int y = usingViewStartY;
-            for (int i = 0; i < usingViews.size(); i++)
+            // Start over if the notifications didn't add up to the item count
+            if (itemIds == null)
             {
-                UsingView usingView = usingViews.get(i);
-                if (usingView != null)
+                return;
+            }
+            if (itemIdCount != getItemCount())
+            {
+                mapPreviousPositions();
+                return;
+            }
+            for (int i = 0; i < itemIdCount; i++)
+            {
+                if (itemIds[i] == NO_ID)
                 {
-                    usingView.view.layout(0, y, usingView.view.getMeasuredWidth(), y + usingView.view.getMeasuredHeight());
+                    itemIds[i] = getItemId(i);
                 }
-                y += getEstimatedHeight(usingViewStartPosition + i);
             }
         }
-    }
-
-
-    // ---
-    // A view type utility
-    // ---
-
-    private static class UsingView
-    {
-        private String viewType;
-        private UniReusableView view;
-        private boolean invalidated;
-    }
-
 
-    // ---
-    // A view type utility
-    // ---
+        public void removeDataSetChangedListener(DataSetChangedListener listener)
+        {
+            dataSetChangedListeners.remove(listener);
+        }
 
-    private static class ViewType
-    {
-        private int countedHeight;
-        private int countedViews;
+        public void addDataSetChangedListener(DataSetChangedListener listener)
+        {
+            if (!dataSetChangedListeners.contains(listener))
+            {
+                dataSetChangedListeners.add(listener);
+            }
+        }
     }
 
 
     // ---
-    // Adapter to create reusable views
+    // Adapter using view type names
     // ---
 
-    public static abstract class Adapter
+    public static abstract class NamedAdapter extends Adapter
     {
-        private List<DataSetChangedListener> dataSetChangedListeners = new ArrayList<>();
-        private boolean[] itemsSelected;
-        private boolean[] itemsEnabled;
-        private int itemSwipedOpen = -1;
+        private UniViewTypeRegistry viewTypeRegistry = new UniViewTypeRegistry();
 
         public abstract View onCreateView(UniReusableView container, String viewType);
+
         public abstract void onUpdateView(UniReusableView container, View view, String viewType, int itemPosition);
-        public abstract int getItemCount();
 
         public View onCreateUnderView(UniReusableView container, String viewType)
         {
@@ -1361,111 +4464,56 @@ public class UniReusingContainer extends ScrollView
             return "default";
         }
 
-        public void onSelectionChanged(int itemPosition, boolean selected)
-        {
-        }
-
-        public void setItemSelected(int itemPosition, boolean selected)
-        {
-            if (itemsSelected != null && itemPosition >= 0 && itemPosition < itemsSelected.length)
-            {
-                boolean changed = itemsSelected[itemPosition] != selected;
-                itemsSelected[itemPosition] = selected;
-                if (changed)
-                {
-                    onSelectionChanged(itemPosition, selected);
-                    notifyItemStateChanged(itemPosition);
-                }
-            }
-        }
-
-        public void setItemEnabled(int itemPosition, boolean enabled)
+        public int getFixedHeight(String viewType)
         {
-            if (itemsEnabled != null && itemPosition >= 0 && itemPosition < itemsEnabled.length)
-            {
-                boolean changed = itemsEnabled[itemPosition] != enabled;
-                itemsEnabled[itemPosition] = enabled;
-                if (changed)
-                {
-                    notifyItemStateChanged(itemPosition);
-                }
-            }
+            return NO_HEIGHT_HINT;
         }
 
-        public boolean isItemSelected(int itemPosition)
+        @Override
+        public View onCreateView(UniReusableView container, int viewTypeId)
         {
-            if (itemsSelected != null && itemPosition >= 0 && itemPosition < itemsSelected.length)
-            {
-                return itemsSelected[itemPosition];
-            }
-            return false;
+            return onCreateView(container, getViewTypeName(viewTypeId));
         }
 
-        public boolean isItemEnabled(int itemPosition)
+        @Override
+        public void onUpdateView(UniReusableView container, View view, int viewTypeId, int itemPosition)
         {
-            if (itemsEnabled != null && itemPosition >= 0 && itemPosition < itemsEnabled.length)
-            {
-                return itemsEnabled[itemPosition];
-            }
-            return true;
+            onUpdateView(container, view, getViewTypeName(viewTypeId), itemPosition);
         }
 
-        public void clearSelections()
+        @Override
+        public View onCreateUnderView(UniReusableView container, int viewTypeId)
         {
-            if (itemsSelected != null)
-            {
-                for (int i = 0; i < itemsSelected.length; i++)
-                {
-                    if (itemsSelected[i])
-                    {
-                        itemsSelected[i] = false;
-                        notifyItemChanged(i);
-                    }
-                }
-            }
+            return onCreateUnderView(container, getViewTypeName(viewTypeId));
         }
 
-        public void notifyDataSetChanged()
+        @Override
+        public void onUpdateUnderView(UniReusableView container, View view, int viewTypeId, int itemPosition)
         {
-            for (DataSetChangedListener listener : dataSetChangedListeners)
-            {
-                listener.onDataSetChanged();
-            }
-            itemsSelected = new boolean[getItemCount()];
-            itemsEnabled = new boolean[getItemCount()];
-            for (int i = 0; i < itemsEnabled.length; i++)
-            {
-                itemsEnabled[i] = true;
-            }
+            onUpdateUnderView(container, view, getViewTypeName(viewTypeId), itemPosition);
         }
 
-        public void notifyItemChanged(int itemPosition)
+        @Override
+        public int getItemViewTypeId(int itemPosition)
         {
-            for (DataSetChangedListener listener : dataSetChangedListeners)
-            {
-                listener.onDataItemChanged(itemPosition);
-            }
+            return getViewTypeId(getItemViewType(itemPosition));
         }
 
-        public void notifyItemStateChanged(int itemPosition)
+        @Override
+        public int getFixedHeight(int viewTypeId)
         {
-            for (DataSetChangedListener listener : dataSetChangedListeners)
-            {
-                listener.onDataItemStateChanged(itemPosition);
-            }
+            return getFixedHeight(getViewTypeName(viewTypeId));
         }
 
-        public void removeDataSetChangedListener(DataSetChangedListener listener)
+        public int getViewTypeId(String viewType)
         {
-            dataSetChangedListeners.remove(listener);
+            // Ids are handed out per adapter, in order of first use
+            return viewTypeRegistry.getId(viewType);
         }
 
-        public void addDataSetChangedListener(DataSetChangedListener listener)
+        public String getViewTypeName(int viewTypeId)
         {
-            if (!dataSetChangedListeners.contains(listener))
-            {
-                dataSetChangedListeners.add(listener);
-            }
+            return viewTypeRegistry.getName(viewTypeId);
         }
     }
 
@@ -1480,4 +4528,15 @@ public class UniReusingContainer extends ScrollView
         void onDataItemChanged(int itemPosition);
         void onDataItemStateChanged(int itemPosition);
     }
+
+    public interface DataSetRangeChangedListener extends DataSetChangedListener
+    {
+        void onDataItemRangeInserted(int itemPosition, int itemCount);
+        void onDataItemRangeRemoved(int itemPosition, int itemCount);
+        void onDataItemMoved(int fromPosition, int toPosition);
+        void onDataItemRangeChanged(int itemPosition, int itemCount);
+        void onDataItemRangeStateChanged(int itemPosition, int itemCount);
+        void onDataSetRemapped(int[] previousPositions);
+        void onDataBatchApplied(int[] operations, int operationCount, UniBitSet changedItems, UniBitSet stateChangedItems);
+    }
 }
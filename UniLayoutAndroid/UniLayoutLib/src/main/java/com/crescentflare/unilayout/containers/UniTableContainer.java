@@ -0,0 +1,1054 @@
+package com.crescentflare.unilayout.containers;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.view.ViewConfiguration;
+import android.view.ViewGroup;
+import android.widget.OverScroller;
+
+import com.crescentflare.unilayout.helpers.UniOffsetIndex;
+import com.crescentflare.unilayout.helpers.UniRecyclePool;
+import com.crescentflare.unilayout.helpers.UniScrollListener;
+import com.crescentflare.unilayout.helpers.UniViewTypeRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * UniLayout container: a table with reusable cells
+ * Scrolls in both directions and only keeps the cells of the visible rows and columns, with optional frozen header rows and columns
+ * Frozen cells are drawn on top of the scrolling cells and receive touches first, cells are clipped to the padding
+ */
+public class UniTableContainer extends ViewGroup
+{
+    // ---
+    // Constants
+    // ---
+
+    private static final int DEFAULT_RECYCLE_LIMIT = 64;
+    private static final int DEFAULT_ROW_HEIGHT_DP = 48;
+    private static final int DEFAULT_COLUMN_WIDTH_DP = 96;
+    private static final int LAYER_SCROLLING = 0;
+    private static final int LAYER_FROZEN_COLUMNS = 1;
+    private static final int LAYER_FROZEN_ROWS = 2;
+    private static final int LAYER_FROZEN_CORNER = 3;
+
+
+    // ---
+    // Members
+    // ---
+
+    private UniRecyclePool<Cell> recyclePool = new UniRecyclePool<>(DEFAULT_RECYCLE_LIMIT);
+    private Adapter adapter;
+    private UniScrollListener scrollListener;
+    private OverScroller scroller;
+    private VelocityTracker velocityTracker;
+    private UniOffsetIndex rowIndex = new UniOffsetIndex();
+    private UniOffsetIndex columnIndex = new UniOffsetIndex();
+    private int[] rowSizes = new int[0];
+    private int[] columnSizes = new int[0];
+    private int[] cellX = new int[0];
+    private int[] cellY = new int[0];
+    private Cell[] cells = new Cell[0];
+    private int[] drawingOrder = new int[0];
+    private int drawingOrderCount;
+    private boolean drawingOrderInvalidated;
+    private int shownFrozenRows;
+    private int shownFrozenColumns;
+    private int visibleRowStart;
+    private int visibleRowEnd;
+    private int visibleColumnStart;
+    private int visibleColumnEnd;
+    private int frozenRowCount;
+    private int frozenColumnCount;
+    private int defaultRowHeight;
+    private int defaultColumnWidth;
+    private int offsetX;
+    private int offsetY;
+    private int touchSlop;
+    private int minFlingVelocity;
+    private int maxFlingVelocity;
+    private float lastTouchX;
+    private float lastTouchY;
+    private boolean dragging;
+    private boolean sizesInvalidated = true;
+
+    private final Adapter.DataSetChangedListener dataSetChangedListener = new Adapter.DataSetChangedListener()
+    {
+        @Override
+        public void onDataSetChanged()
+        {
+            sizesInvalidated = true;
+            for (Cell cell : cells)
+            {
+                if (cell != null)
+                {
+                    cell.bound = false;
+                }
+            }
+            requestLayout();
+        }
+
+        @Override
+        public void onCellChanged(int row, int column)
+        {
+            Cell cell = getCell(row, column);
+            if (cell != null)
+            {
+                cell.bound = false;
+                requestLayout();
+            }
+        }
+    };
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public UniTableContainer(Context context)
+    {
+        this(context, (AttributeSet)null);
+    }
+
+    public UniTableContainer(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+        init(attrs);
+    }
+
+    public UniTableContainer(Context context, AttributeSet attrs, int defStyleAttr)
+    {
+        this(context, attrs);
+    }
+
+    public UniTableContainer(Context context, AttributeSet attrs, int defStyleAttr, int defStyleRes)
+    {
+        this(context, attrs);
+    }
+
+    private void init(AttributeSet attrs)
+    {
+        ViewConfiguration configuration = ViewConfiguration.get(getContext());
+        float density = getResources().getDisplayMetrics().density;
+        scroller = new OverScroller(getContext());
+        touchSlop = configuration.getScaledTouchSlop();
+        minFlingVelocity = configuration.getScaledMinimumFlingVelocity();
+        maxFlingVelocity = configuration.getScaledMaximumFlingVelocity();
+        defaultRowHeight = (int)(density * DEFAULT_ROW_HEIGHT_DP);
+        defaultColumnWidth = (int)(density * DEFAULT_COLUMN_WIDTH_DP);
+        setChildrenDrawingOrderEnabled(true);
+    }
+
+
+    // ---
+    // Data handling
+    // ---
+
+    public Adapter getAdapter()
+    {
+        return adapter;
+    }
+
+    public void setAdapter(Adapter adapter)
+    {
+        if (this.adapter != null)
+        {
+            this.adapter.removeDataSetChangedListener(dataSetChangedListener);
+        }
+        recycleCells();
+        recyclePool.clear();
+        this.adapter = adapter;
+        if (this.adapter != null)
+        {
+            this.adapter.addDataSetChangedListener(dataSetChangedListener);
+        }
+        offsetX = 0;
+        offsetY = 0;
+        sizesInvalidated = true;
+        requestLayout();
+    }
+
+    public void setFrozenRowCount(int count)
+    {
+        // Frozen rows stay at the top while scrolling vertically, for example as a header
+        frozenRowCount = Math.max(0, count);
+        requestLayout();
+    }
+
+    public int getFrozenRowCount()
+    {
+        return frozenRowCount;
+    }
+
+    public void setFrozenColumnCount(int count)
+    {
+        // Frozen columns stay at the left while scrolling horizontally
+        frozenColumnCount = Math.max(0, count);
+        requestLayout();
+    }
+
+    public int getFrozenColumnCount()
+    {
+        return frozenColumnCount;
+    }
+
+    public View getCellView(int row, int column)
+    {
+        Cell cell = getCell(row, column);
+        return cell != null ? cell.view : null;
+    }
+
+    public int getVisibleCellCount()
+    {
+        return cells.length;
+    }
+
+
+    // ---
+    // Recycling limits
+    // ---
+
+    public void setDefaultRecycleLimit(int limit)
+    {
+        recyclePool.setDefaultLimit(limit);
+    }
+
+    public int getDefaultRecycleLimit()
+    {
+        return recyclePool.getDefaultLimit();
+    }
+
+    public void setRecycleLimit(int viewTypeId, int limit)
+    {
+        recyclePool.setLimit(viewTypeId, limit);
+    }
+
+    public void setRecycleLimit(String viewType, int limit)
+    {
+        setRecycleLimit(getViewTypeId(viewType), limit);
+    }
+
+    public int getRecycleLimit(int viewTypeId)
+    {
+        return recyclePool.getLimit(viewTypeId);
+    }
+
+    public int getRecycleLimit(String viewType)
+    {
+        return getRecycleLimit(getViewTypeId(viewType));
+    }
+
+    private int getViewTypeId(String viewType)
+    {
+        // View type names belong to the adapter, set a named adapter before using them
+        return adapter instanceof NamedAdapter ? ((NamedAdapter)adapter).getViewTypeId(viewType) : UniReusingContainer.UNDEFINED_VIEW_TYPE;
+    }
+
+
+    // ---
+    // Scroll handling
+    // ---
+
+    public void setScrollListener(UniScrollListener scrollListener)
+    {
+        this.scrollListener = scrollListener;
+    }
+
+    public int getOffsetX()
+    {
+        return offsetX;
+    }
+
+    public int getOffsetY()
+    {
+        return offsetY;
+    }
+
+    public void scrollToOffset(int x, int y)
+    {
+        // Cells which enter the view are bound and placed right away, the others only move along
+        int oldX = offsetX;
+        int oldY = offsetY;
+        offsetX = x;
+        offsetY = y;
+        clampOffsets();
+        if (offsetX != oldX || offsetY != oldY)
+        {
+            if (!sizesInvalidated && getWidth() > 0 && getHeight() > 0)
+            {
+                updateCells();
+                layoutCells();
+            }
+            invalidate();
+            if (scrollListener != null)
+            {
+                scrollListener.onScrollChanged(offsetX, offsetY, oldX, oldY);
+            }
+        }
+    }
+
+    public void scrollToCell(int row, int column)
+    {
+        // Frozen rows and columns are always visible, the estimated offset is corrected once the cells are measured
+        int x = offsetX;
+        int y = offsetY;
+        if (row >= shownFrozenRows && row < rowIndex.getCount())
+        {
+            y = getRowOffset(row) - getRowOffset(shownFrozenRows);
+        }
+        if (column >= shownFrozenColumns && column < columnIndex.getCount())
+        {
+            x = getColumnOffset(column) - getColumnOffset(shownFrozenColumns);
+        }
+        scroller.forceFinished(true);
+        scrollToOffset(x, y);
+    }
+
+    private void clampOffsets()
+    {
+        offsetX = Math.max(0, Math.min(offsetX, getColumnOffset(columnIndex.getCount()) - getContentWidth()));
+        offsetY = Math.max(0, Math.min(offsetY, getRowOffset(rowIndex.getCount()) - getContentHeight()));
+    }
+
+    private int getContentWidth()
+    {
+        return Math.max(0, getWidth() - getPaddingLeft() - getPaddingRight());
+    }
+
+    private int getContentHeight()
+    {
+        return Math.max(0, getHeight() - getPaddingTop() - getPaddingBottom());
+    }
+
+    @Override
+    public void computeScroll()
+    {
+        if (scroller.computeScrollOffset())
+        {
+            scrollToOffset(scroller.getCurrX(), scroller.getCurrY());
+            postInvalidate();
+        }
+    }
+
+
+    // ---
+    // Touch handling
+    // ---
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent event)
+    {
+        // Take over the touch when dragging beyond the touch slop in any direction, or when touching while flinging
+        switch (event.getAction() & MotionEvent.ACTION_MASK)
+        {
+            case MotionEvent.ACTION_DOWN:
+                lastTouchX = event.getX();
+                lastTouchY = event.getY();
+                dragging = !scroller.isFinished();
+                scroller.forceFinished(true);
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (!dragging && (Math.abs(event.getX() - lastTouchX) > touchSlop || Math.abs(event.getY() - lastTouchY) > touchSlop))
+                {
+                    startDragging(event);
+                }
+                break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                dragging = false;
+                break;
+        }
+        return dragging;
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event)
+    {
+        if (velocityTracker == null)
+        {
+            velocityTracker = VelocityTracker.obtain();
+        }
+        velocityTracker.addMovement(event);
+        switch (event.getAction() & MotionEvent.ACTION_MASK)
+        {
+            case MotionEvent.ACTION_DOWN:
+                lastTouchX = event.getX();
+                lastTouchY = event.getY();
+                scroller.forceFinished(true);
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (!dragging && (Math.abs(event.getX() - lastTouchX) > touchSlop || Math.abs(event.getY() - lastTouchY) > touchSlop))
+                {
+                    startDragging(event);
+                }
+                if (dragging)
+                {
+                    scrollToOffset(offsetX + (int)(lastTouchX - event.getX()), offsetY + (int)(lastTouchY - event.getY()));
+                    lastTouchX = event.getX();
+                    lastTouchY = event.getY();
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+                if (dragging)
+                {
+                    velocityTracker.computeCurrentVelocity(1000, maxFlingVelocity);
+                    int velocityX = (int)velocityTracker.getXVelocity();
+                    int velocityY = (int)velocityTracker.getYVelocity();
+                    if (Math.abs(velocityX) > minFlingVelocity || Math.abs(velocityY) > minFlingVelocity)
+                    {
+                        int maxX = Math.max(0, getColumnOffset(columnIndex.getCount()) - getContentWidth());
+                        int maxY = Math.max(0, getRowOffset(rowIndex.getCount()) - getContentHeight());
+                        scroller.fling(offsetX, offsetY, -velocityX, -velocityY, 0, maxX, 0, maxY);
+                        postInvalidate();
+                    }
+                }
+                endDragging();
+                return true;
+            case MotionEvent.ACTION_CANCEL:
+                endDragging();
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+
+    private void startDragging(MotionEvent event)
+    {
+        dragging = true;
+        lastTouchX = event.getX();
+        lastTouchY = event.getY();
+        if (getParent() != null)
+        {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    private void endDragging()
+    {
+        dragging = false;
+        if (velocityTracker != null)
+        {
+            velocityTracker.recycle();
+            velocityTracker = null;
+        }
+    }
+
+
+    // ---
+    // Row and column sizes
+    // ---
+
+    private void refreshSizes()
+    {
+        // Start with the sizes given by the adapter, the other rows and columns are estimated until their cells are measured
+        int rowCount = adapter != null ? adapter.getRowCount() : 0;
+        int columnCount = adapter != null ? adapter.getColumnCount() : 0;
+        rowIndex.reset(rowCount);
+        columnIndex.reset(columnCount);
+        rowSizes = rowSizes.length == rowCount ? rowSizes : new int[rowCount];
+        columnSizes = columnSizes.length == columnCount ? columnSizes : new int[columnCount];
+        Arrays.fill(rowSizes, -1);
+        Arrays.fill(columnSizes, -1);
+        for (int i = 0; i < rowCount; i++)
+        {
+            int height = adapter.getRowHeight(i);
+            if (height >= 0)
+            {
+                setSize(rowIndex, rowSizes, i, height);
+            }
+        }
+        for (int i = 0; i < columnCount; i++)
+        {
+            int width = adapter.getColumnWidth(i);
+            if (width >= 0)
+            {
+                setSize(columnIndex, columnSizes, i, width);
+            }
+        }
+        sizesInvalidated = false;
+    }
+
+    private static boolean setSize(UniOffsetIndex index, int[] sizes, int position, int size)
+    {
+        if (sizes[position] == size)
+        {
+            return false;
+        }
+        index.addSize(position, sizes[position] >= 0 ? size - sizes[position] : size, sizes[position] >= 0 ? 0 : 1);
+        sizes[position] = size;
+        return true;
+    }
+
+    private static int getEstimatedSize(UniOffsetIndex index, int defaultSize)
+    {
+        int measuredCount = index.getMeasuredCount();
+        return measuredCount > 0 ? index.getTotalSize(0) / measuredCount : defaultSize;
+    }
+
+    private int getRowOffset(int row)
+    {
+        return rowIndex.getOffset(row, getEstimatedSize(rowIndex, defaultRowHeight));
+    }
+
+    private int getColumnOffset(int column)
+    {
+        return columnIndex.getOffset(column, getEstimatedSize(columnIndex, defaultColumnWidth));
+    }
+
+    private int getRowSize(int row)
+    {
+        return rowSizes[row] >= 0 ? rowSizes[row] : getEstimatedSize(rowIndex, defaultRowHeight);
+    }
+
+    private int getColumnSize(int column)
+    {
+        return columnSizes[column] >= 0 ? columnSizes[column] : getEstimatedSize(columnIndex, defaultColumnWidth);
+    }
+
+
+    // ---
+    // Cell management
+    // ---
+
+    private Cell getCell(int row, int column)
+    {
+        int rowIndex = getRowSlot(row);
+        int columnIndex = getColumnSlot(column);
+        return rowIndex >= 0 && columnIndex >= 0 ? cells[rowIndex * getColumnSlotCount() + columnIndex] : null;
+    }
+
+    private int getRowSlotCount()
+    {
+        return shownFrozenRows + visibleRowEnd - visibleRowStart;
+    }
+
+    private int getColumnSlotCount()
+    {
+        return shownFrozenColumns + visibleColumnEnd - visibleColumnStart;
+    }
+
+    private int getRowSlot(int row)
+    {
+        if (row >= 0 && row < shownFrozenRows)
+        {
+            return row;
+        }
+        return row >= visibleRowStart && row < visibleRowEnd ? shownFrozenRows + row - visibleRowStart : -1;
+    }
+
+    private int getColumnSlot(int column)
+    {
+        if (column >= 0 && column < shownFrozenColumns)
+        {
+            return column;
+        }
+        return column >= visibleColumnStart && column < visibleColumnEnd ? shownFrozenColumns + column - visibleColumnStart : -1;
+    }
+
+    private int getSlotRow(int slot)
+    {
+        return slot < shownFrozenRows ? slot : visibleRowStart + slot - shownFrozenRows;
+    }
+
+    private int getSlotColumn(int slot)
+    {
+        return slot < shownFrozenColumns ? slot : visibleColumnStart + slot - shownFrozenColumns;
+    }
+
+    private void updateCells()
+    {
+        // Sizing new cells can move the visible range (rows growing or shrinking compared to the estimate), so repeat a few times
+        if (sizesInvalidated)
+        {
+            refreshSizes();
+        }
+        for (int pass = 0; pass < 3; pass++)
+        {
+            updateVisibleRange();
+            if (!sizeNewCells())
+            {
+                break;
+            }
+        }
+
+        // Give all cells the size of their row and column
+        int columnSlots = getColumnSlotCount();
+        for (int i = 0; i < cells.length; i++)
+        {
+            Cell cell = cells[i];
+            int widthSpec = MeasureSpec.makeMeasureSpec(getColumnSize(getSlotColumn(i % columnSlots)), MeasureSpec.EXACTLY);
+            int heightSpec = MeasureSpec.makeMeasureSpec(getRowSize(getSlotRow(i / columnSlots)), MeasureSpec.EXACTLY);
+            if (cell.widthSpec != widthSpec || cell.heightSpec != heightSpec || cell.view.isLayoutRequested())
+            {
+                cell.view.measure(widthSpec, heightSpec);
+                cell.widthSpec = widthSpec;
+                cell.heightSpec = heightSpec;
+            }
+        }
+    }
+
+    private void updateVisibleRange()
+    {
+        // Find the rows and columns in view after the frozen ones through the size indexes
+        int rowCount = rowIndex.getCount();
+        int columnCount = columnIndex.getCount();
+        int frozenRows = Math.min(frozenRowCount, rowCount);
+        int frozenColumns = Math.min(frozenColumnCount, columnCount);
+        int rowStart = frozenRows;
+        int rowEnd = frozenRows;
+        int columnStart = frozenColumns;
+        int columnEnd = frozenColumns;
+        if (rowCount > frozenRows && getContentHeight() > getRowOffset(frozenRows))
+        {
+            int estimatedHeight = getEstimatedSize(rowIndex, defaultRowHeight);
+            rowStart = Math.max(frozenRows, rowIndex.getPositionAtOffset(offsetY + getRowOffset(frozenRows), estimatedHeight));
+            rowEnd = Math.max(rowStart, rowIndex.getPositionAtOffset(offsetY + getContentHeight() - 1, estimatedHeight) + 1);
+        }
+        if (columnCount > frozenColumns && getContentWidth() > getColumnOffset(frozenColumns))
+        {
+            int estimatedWidth = getEstimatedSize(columnIndex, defaultColumnWidth);
+            columnStart = Math.max(frozenColumns, columnIndex.getPositionAtOffset(offsetX + getColumnOffset(frozenColumns), estimatedWidth));
+            columnEnd = Math.max(columnStart, columnIndex.getPositionAtOffset(offsetX + getContentWidth() - 1, estimatedWidth) + 1);
+        }
+
+        // Move the cells which stay in view to their new slot, recycle the others
+        Cell[] previousCells = cells;
+        int previousColumnSlots = getColumnSlotCount();
+        int newColumnSlots = frozenColumns + columnEnd - columnStart;
+        int newRowSlots = frozenRows + rowEnd - rowStart;
+        if (frozenRows != shownFrozenRows || frozenColumns != shownFrozenColumns || rowStart != visibleRowStart || rowEnd != visibleRowEnd || columnStart != visibleColumnStart || columnEnd != visibleColumnEnd)
+        {
+            cells = new Cell[newRowSlots * newColumnSlots];
+            for (int i = 0; i < previousCells.length; i++)
+            {
+                Cell cell = previousCells[i];
+                int row = getSlotRow(i / previousColumnSlots);
+                int column = getSlotColumn(i % previousColumnSlots);
+                boolean rowShown = row < frozenRows || (row >= rowStart && row < rowEnd);
+                boolean columnShown = column < frozenColumns || (column >= columnStart && column < columnEnd);
+                if (rowShown && columnShown)
+                {
+                    int rowSlot = row < frozenRows ? row : frozenRows + row - rowStart;
+                    int columnSlot = column < frozenColumns ? column : frozenColumns + column - columnStart;
+                    cells[rowSlot * newColumnSlots + columnSlot] = cell;
+                }
+                else
+                {
+                    recycleCell(cell);
+                }
+            }
+            shownFrozenRows = frozenRows;
+            shownFrozenColumns = frozenColumns;
+            visibleRowStart = rowStart;
+            visibleRowEnd = rowEnd;
+            visibleColumnStart = columnStart;
+            visibleColumnEnd = columnEnd;
+            drawingOrderInvalidated = true;
+        }
+
+        // Bind cells which are new or changed
+        for (int i = 0; i < cells.length; i++)
+        {
+            int row = getSlotRow(i / newColumnSlots);
+            int column = getSlotColumn(i % newColumnSlots);
+            Cell cell = cells[i];
+            int viewType = adapter.getCellViewTypeId(row, column);
+            if (cell != null && cell.viewType != viewType)
+            {
+                recycleCell(cell);
+                cell = null;
+            }
+            if (cell == null)
+            {
+                cell = recyclePool.take(viewType);
+                if (cell == null)
+                {
+                    cell = createCell(viewType);
+                }
+                addViewInLayout(cell.view, -1, cell.view.getLayoutParams() != null ? cell.view.getLayoutParams() : new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT), true);
+                cells[i] = cell;
+                drawingOrderInvalidated = true;
+            }
+            if (!cell.bound)
+            {
+                adapter.onUpdateCellView(cell.view, viewType, row, column);
+                cell.bound = true;
+                cell.sized = false;
+                cell.widthSpec = MeasureSpec.UNSPECIFIED;
+                cell.heightSpec = MeasureSpec.UNSPECIFIED;
+            }
+        }
+    }
+
+    private boolean sizeNewCells()
+    {
+        // Rows and columns without a size from the adapter grow to fit the new cells, keep the first scrolling row and column in place
+        int anchorRowOffset = getRowOffset(visibleRowStart);
+        int anchorColumnOffset = getColumnOffset(visibleColumnStart);
+        int columnSlots = getColumnSlotCount();
+        boolean changed = false;
+        for (int i = 0; i < cells.length; i++)
+        {
+            Cell cell = cells[i];
+            if (!cell.sized)
+            {
+                int row = getSlotRow(i / columnSlots);
+                int column = getSlotColumn(i % columnSlots);
+                int rowHeight = adapter.getRowHeight(row);
+                int columnWidth = adapter.getColumnWidth(column);
+                int widthSpec = columnWidth >= 0 ? MeasureSpec.makeMeasureSpec(columnWidth, MeasureSpec.EXACTLY) : MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+                int heightSpec = rowHeight >= 0 ? MeasureSpec.makeMeasureSpec(rowHeight, MeasureSpec.EXACTLY) : MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+                cell.view.measure(widthSpec, heightSpec);
+                cell.widthSpec = widthSpec;
+                cell.heightSpec = heightSpec;
+                cell.sized = true;
+                if (columnWidth < 0 && cell.view.getMeasuredWidth() > columnSizes[column])
+                {
+                    changed |= setSize(columnIndex, columnSizes, column, cell.view.getMeasuredWidth());
+                }
+                if (rowHeight < 0 && cell.view.getMeasuredHeight() > rowSizes[row])
+                {
+                    changed |= setSize(rowIndex, rowSizes, row, cell.view.getMeasuredHeight());
+                }
+            }
+        }
+        if (changed)
+        {
+            offsetX += getColumnOffset(visibleColumnStart) - anchorColumnOffset;
+            offsetY += getRowOffset(visibleRowStart) - anchorRowOffset;
+            clampOffsets();
+        }
+        return changed;
+    }
+
+    private Cell createCell(int viewType)
+    {
+        Cell cell = new Cell();
+        cell.viewType = viewType;
+        cell.view = adapter.onCreateCellView(this, viewType);
+        if (cell.view == null)
+        {
+            throw new IllegalStateException("Adapter should create a view in onCreateCellView for view type " + viewType);
+        }
+        recyclePool.countCreated(viewType, false);
+        return cell;
+    }
+
+    private void recycleCell(Cell cell)
+    {
+        if (cell != null)
+        {
+            removeViewInLayout(cell.view);
+            cell.bound = false;
+            drawingOrderInvalidated = true;
+            recyclePool.put(cell.viewType, cell);
+        }
+    }
+
+    private void recycleCells()
+    {
+        for (Cell cell : cells)
+        {
+            recycleCell(cell);
+        }
+        cells = new Cell[0];
+        visibleRowStart = 0;
+        visibleRowEnd = 0;
+        visibleColumnStart = 0;
+        visibleColumnEnd = 0;
+        shownFrozenRows = 0;
+        shownFrozenColumns = 0;
+    }
+
+
+    // ---
+    // Custom layout
+    // ---
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+    {
+        // Fill the available space, or use the (estimated) table size when wrapping
+        if (sizesInvalidated)
+        {
+            refreshSizes();
+        }
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = MeasureSpec.getSize(heightMeasureSpec);
+        int tableWidth = getColumnOffset(columnIndex.getCount()) + getPaddingLeft() + getPaddingRight();
+        int tableHeight = getRowOffset(rowIndex.getCount()) + getPaddingTop() + getPaddingBottom();
+        if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY)
+        {
+            width = MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.AT_MOST ? Math.min(width, tableWidth) : tableWidth;
+        }
+        if (MeasureSpec.getMode(heightMeasureSpec) != MeasureSpec.EXACTLY)
+        {
+            height = MeasureSpec.getMode(heightMeasureSpec) == MeasureSpec.AT_MOST ? Math.min(height, tableHeight) : tableHeight;
+        }
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom)
+    {
+        if (adapter == null)
+        {
+            recycleCells();
+            return;
+        }
+        updateCells();
+        clampOffsets();
+        layoutCells();
+    }
+
+    private void layoutCells()
+    {
+        // Frozen rows and columns don't scroll, cells keeping their size are only moved
+        int rowSlots = getRowSlotCount();
+        int columnSlots = getColumnSlotCount();
+        if (cellX.length < columnSlots)
+        {
+            cellX = new int[columnSlots * 2];
+        }
+        if (cellY.length < rowSlots)
+        {
+            cellY = new int[rowSlots * 2];
+        }
+        for (int i = 0; i < columnSlots; i++)
+        {
+            int column = getSlotColumn(i);
+            cellX[i] = getPaddingLeft() + getColumnOffset(column) - (column >= shownFrozenColumns ? offsetX : 0);
+        }
+        for (int i = 0; i < rowSlots; i++)
+        {
+            int row = getSlotRow(i);
+            cellY[i] = getPaddingTop() + getRowOffset(row) - (row >= shownFrozenRows ? offsetY : 0);
+        }
+        for (int i = 0; i < cells.length; i++)
+        {
+            View view = cells[i].view;
+            int x = cellX[i % columnSlots];
+            int y = cellY[i / columnSlots];
+            if (view.getWidth() == view.getMeasuredWidth() && view.getHeight() == view.getMeasuredHeight() && !view.isLayoutRequested())
+            {
+                view.offsetLeftAndRight(x - view.getLeft());
+                view.offsetTopAndBottom(y - view.getTop());
+            }
+            else
+            {
+                view.layout(x, y, x + view.getMeasuredWidth(), y + view.getMeasuredHeight());
+            }
+        }
+        if (drawingOrderInvalidated)
+        {
+            updateDrawingOrder();
+        }
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas)
+    {
+        // Draw the scrolling cells first, clipped to stay out of the frozen area, then the frozen columns, rows and the corner on top
+        int left = getPaddingLeft();
+        int top = getPaddingTop();
+        int right = getWidth() - getPaddingRight();
+        int bottom = getHeight() - getPaddingBottom();
+        int frozenRight = Math.min(right, left + getColumnOffset(shownFrozenColumns));
+        int frozenBottom = Math.min(bottom, top + getRowOffset(shownFrozenRows));
+        drawCells(canvas, LAYER_SCROLLING, frozenRight, frozenBottom, right, bottom);
+        drawCells(canvas, LAYER_FROZEN_COLUMNS, left, frozenBottom, frozenRight, bottom);
+        drawCells(canvas, LAYER_FROZEN_ROWS, frozenRight, top, right, frozenBottom);
+        drawCells(canvas, LAYER_FROZEN_CORNER, left, top, frozenRight, frozenBottom);
+    }
+
+    private void drawCells(Canvas canvas, int layer, int left, int top, int right, int bottom)
+    {
+        if (left >= right || top >= bottom)
+        {
+            return;
+        }
+        int columnSlots = getColumnSlotCount();
+        canvas.save();
+        canvas.clipRect(left, top, right, bottom);
+        for (int i = 0; i < cells.length; i++)
+        {
+            if (getCellLayer(i, columnSlots) == layer)
+            {
+                drawChild(canvas, cells[i].view, getDrawingTime());
+            }
+        }
+        canvas.restore();
+    }
+
+    private int getCellLayer(int slot, int columnSlots)
+    {
+        return (slot / columnSlots < shownFrozenRows ? LAYER_FROZEN_ROWS : 0) | (slot % columnSlots < shownFrozenColumns ? LAYER_FROZEN_COLUMNS : 0);
+    }
+
+    private void updateDrawingOrder()
+    {
+        // Order the children by the layer they're drawn in, touches are dispatched in reverse drawing order so frozen cells on top receive them before the scrolling cells below
+        int childCount = getChildCount();
+        int columnSlots = getColumnSlotCount();
+        if (drawingOrder.length < childCount)
+        {
+            drawingOrder = new int[childCount * 2];
+        }
+        drawingOrderCount = 0;
+        for (int layer = LAYER_SCROLLING; layer <= LAYER_FROZEN_CORNER; layer++)
+        {
+            for (int i = 0; i < cells.length; i++)
+            {
+                if (getCellLayer(i, columnSlots) == layer)
+                {
+                    drawingOrder[drawingOrderCount++] = indexOfChild(cells[i].view);
+                }
+            }
+        }
+        drawingOrderInvalidated = false;
+    }
+
+    @Override
+    protected int getChildDrawingOrder(int childCount, int i)
+    {
+        return childCount == drawingOrderCount ? drawingOrder[i] : i;
+    }
+
+
+    // ---
+    // Cell utility
+    // ---
+
+    private static class Cell
+    {
+        private int viewType;
+        private int widthSpec;
+        private int heightSpec;
+        private View view;
+        private boolean bound;
+        private boolean sized;
+    }
+
+
+    // ---
+    // Adapter to create reusable cells
+    // ---
+
+    public static abstract class Adapter
+    {
+        public static final int NO_SIZE = -1;
+
+        private List<DataSetChangedListener> dataSetChangedListeners = new ArrayList<>();
+
+        public abstract int getRowCount();
+
+        public abstract int getColumnCount();
+
+        public int getRowHeight(int row)
+        {
+            return NO_SIZE;
+        }
+
+        public int getColumnWidth(int column)
+        {
+            return NO_SIZE;
+        }
+
+        public abstract View onCreateCellView(ViewGroup parent, int viewTypeId);
+
+        public abstract void onUpdateCellView(View view, int viewTypeId, int row, int column);
+
+        public int getCellViewTypeId(int row, int column)
+        {
+            return 0;
+        }
+
+        public void notifyDataSetChanged()
+        {
+            for (DataSetChangedListener listener : dataSetChangedListeners)
+            {
+                listener.onDataSetChanged();
+            }
+        }
+
+        public void notifyCellChanged(int row, int column)
+        {
+            for (DataSetChangedListener listener : dataSetChangedListeners)
+            {
+                listener.onCellChanged(row, column);
+            }
+        }
+
+        public void removeDataSetChangedListener(DataSetChangedListener listener)
+        {
+            dataSetChangedListeners.remove(listener);
+        }
+
+        public void addDataSetChangedListener(DataSetChangedListener listener)
+        {
+            if (!dataSetChangedListeners.contains(listener))
+            {
+                dataSetChangedListeners.add(listener);
+            }
+        }
+
+        public interface DataSetChangedListener
+        {
+            void onDataSetChanged();
+            void onCellChanged(int row, int column);
+        }
+    }
+
+
+    // ---
+    // Adapter using view type names
+    // ---
+
+    public static abstract class NamedAdapter extends Adapter
+    {
+        private UniViewTypeRegistry viewTypeRegistry = new UniViewTypeRegistry();
+
+        public abstract View onCreateCellView(ViewGroup parent, String viewType);
+
+        public abstract void onUpdateCellView(View view, String viewType, int row, int column);
+
+        public String getCellViewType(int row, int column)
+        {
+            return "default";
+        }
+
+        @Override
+        public View onCreateCellView(ViewGroup parent, int viewTypeId)
+        {
+            return onCreateCellView(parent, getViewTypeName(viewTypeId));
+        }
+
+        @Override
+        public void onUpdateCellView(View view, int viewTypeId, int row, int column)
+        {
+            onUpdateCellView(view, getViewTypeName(viewTypeId), row, column);
+        }
+
+        @Override
+        public int getCellViewTypeId(int row, int column)
+        {
+            return getViewTypeId(getCellViewType(row, column));
+        }
+
+        public int getViewTypeId(String viewType)
+        {
+            // Ids are handed out per adapter, in order of first use
+            return viewTypeRegistry.getId(viewType);
+        }
+
+        public String getViewTypeName(int viewTypeId)
+        {
+            return viewTypeRegistry.getName(viewTypeId);
+        }
+    }
+}
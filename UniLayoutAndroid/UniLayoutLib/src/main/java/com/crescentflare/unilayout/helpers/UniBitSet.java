@@ -0,0 +1,355 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.Arrays;
+
+/**
+ * UniLayout helper: a compact set of item flags
+ * Stores one bit per item in a long array, the bits follow the items when they are inserted, removed or moved
+ */
+public class UniBitSet
+{
+    // ---
+    // Members
+    // ---
+
+    private long[] words = new long[0];
+    private int count;
+    private int cardinality;
+
+
+    // ---
+    // Item count
+    // ---
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public void reset(int count)
+    {
+        this.count = Math.max(0, count);
+        int wordCount = getWordCount(this.count);
+        if (words.length < wordCount || words.length > wordCount * 4)
+        {
+            words = new long[wordCount];
+        }
+        else
+        {
+            Arrays.fill(words, 0);
+        }
+        cardinality = 0;
+    }
+
+    public void insert(int position, int itemCount)
+    {
+        if (position < 0 || position > count || itemCount <= 0)
+        {
+            return;
+        }
+        ensureCapacity(count + itemCount);
+        count += itemCount;
+        shiftUp(position, itemCount);
+    }
+
+    public void remove(int position, int itemCount)
+    {
+        itemCount = Math.min(itemCount, count - position);
+        if (position < 0 || itemCount <= 0)
+        {
+            return;
+        }
+        cardinality -= countBits(position, position + itemCount);
+        shiftDown(position, itemCount);
+        count -= itemCount;
+    }
+
+    public void move(int fromPosition, int toPosition)
+    {
+        if (fromPosition < 0 || fromPosition >= count || toPosition < 0 || toPosition >= count || fromPosition == toPosition)
+        {
+            return;
+        }
+        boolean value = getBit(fromPosition);
+        shiftDown(fromPosition, 1);
+        shiftUp(toPosition, 1);
+        setBit(toPosition, value);
+    }
+
+    public void remap(int[] previousPositions)
+    {
+        // Take the bit of the previous position of each item, new items start cleared
+        long[] previousWords = words;
+        int previousCount = count;
+        words = new long[getWordCount(previousPositions.length)];
+        count = previousPositions.length;
+        cardinality = 0;
+        for (int i = 0; i < count; i++)
+        {
+            int previousPosition = previousPositions[i];
+            if (previousPosition >= 0 && previousPosition < previousCount && (previousWords[previousPosition >> 6] & (1L << previousPosition)) != 0)
+            {
+                setBit(i, true);
+                cardinality++;
+            }
+        }
+    }
+
+
+    // ---
+    // Flags
+    // ---
+
+    public boolean get(int position)
+    {
+        return position >= 0 && position < count && getBit(position);
+    }
+
+    public boolean set(int position, boolean value)
+    {
+        // Returns true if the flag changed
+        if (position < 0 || position >= count || getBit(position) == value)
+        {
+            return false;
+        }
+        setBit(position, value);
+        cardinality += value ? 1 : -1;
+        return true;
+    }
+
+    public int getCardinality()
+    {
+        return cardinality;
+    }
+
+    public int nextSetBit(int fromPosition)
+    {
+        if (fromPosition < 0)
+        {
+            fromPosition = 0;
+        }
+        if (fromPosition >= count || cardinality == 0)
+        {
+            return -1;
+        }
+        int wordIndex = fromPosition >> 6;
+        long word = words[wordIndex] & (-1L << fromPosition);
+        while (true)
+        {
+            if (word != 0)
+            {
+                int position = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+                return position < count ? position : -1;
+            }
+            wordIndex++;
+            if (wordIndex >= words.length)
+            {
+                return -1;
+            }
+            word = words[wordIndex];
+        }
+    }
+
+    public int nextClearBit(int fromPosition)
+    {
+        // Returns the count if all flags after the position are set
+        if (fromPosition < 0)
+        {
+            fromPosition = 0;
+        }
+        if (fromPosition >= count)
+        {
+            return count;
+        }
+        int wordIndex = fromPosition >> 6;
+        long word = ~words[wordIndex] & (-1L << fromPosition);
+        while (true)
+        {
+            if (word != 0)
+            {
+                return Math.min(count, (wordIndex << 6) + Long.numberOfTrailingZeros(word));
+            }
+            wordIndex++;
+            if (wordIndex >= words.length)
+            {
+                return count;
+            }
+            word = ~words[wordIndex];
+        }
+    }
+
+    public int previousSetBit(int fromPosition)
+    {
+        // Returns -1 if no flag before or at the position is set
+        fromPosition = Math.min(fromPosition, count - 1);
+        if (fromPosition < 0 || cardinality == 0)
+        {
+            return -1;
+        }
+        int wordIndex = fromPosition >> 6;
+        long word = words[wordIndex] & (-1L >>> (63 - (fromPosition & 63)));
+        while (true)
+        {
+            if (word != 0)
+            {
+                return (wordIndex << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            wordIndex--;
+            if (wordIndex < 0)
+            {
+                return -1;
+            }
+            word = words[wordIndex];
+        }
+    }
+
+    public int previousClearBit(int fromPosition)
+    {
+        // Returns -1 if all flags before and at the position are set
+        fromPosition = Math.min(fromPosition, count - 1);
+        if (fromPosition < 0)
+        {
+            return -1;
+        }
+        int wordIndex = fromPosition >> 6;
+        long word = ~words[wordIndex] & (-1L >>> (63 - (fromPosition & 63)));
+        while (true)
+        {
+            if (word != 0)
+            {
+                return (wordIndex << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            wordIndex--;
+            if (wordIndex < 0)
+            {
+                return -1;
+            }
+            word = ~words[wordIndex];
+        }
+    }
+
+
+    // ---
+    // Helpers
+    // ---
+
+    private boolean getBit(int position)
+    {
+        return (words[position >> 6] & (1L << position)) != 0;
+    }
+
+    private void setBit(int position, boolean value)
+    {
+        if (value)
+        {
+            words[position >> 6] |= 1L << position;
+        }
+        else
+        {
+            words[position >> 6] &= ~(1L << position);
+        }
+    }
+
+    private void shiftUp(int position, int distance)
+    {
+        // Move the bits from the position up by whole words with a carry from the word below, the gap and the bits past the count are cleared
+        int startWord = position >> 6;
+        int endWord = getWordCount(count) - 1;
+        int wordShift = distance >> 6;
+        int bitShift = distance & 63;
+        long keepMask = (1L << position) - 1;
+        long keep = words[startWord] & keepMask;
+        words[startWord] &= ~keepMask;
+        for (int i = endWord; i >= startWord; i--)
+        {
+            int source = i - wordShift;
+            long value = 0;
+            if (source >= startWord)
+            {
+                value = words[source] << bitShift;
+                if (bitShift != 0 && source > startWord)
+                {
+                    value |= words[source - 1] >>> (64 - bitShift);
+                }
+            }
+            words[i] = value;
+        }
+        words[startWord] |= keep;
+        clearFrom(count);
+    }
+
+    private void shiftDown(int position, int distance)
+    {
+        // Move the bits after the removed range down by whole words with a carry from the word above, the bits at the end are cleared
+        int startWord = position >> 6;
+        int endWord = getWordCount(count) - 1;
+        int wordShift = distance >> 6;
+        int bitShift = distance & 63;
+        long keepMask = (1L << position) - 1;
+        long keep = words[startWord] & keepMask;
+        for (int i = startWord; i <= endWord; i++)
+        {
+            int source = i + wordShift;
+            long value = 0;
+            if (source <= endWord)
+            {
+                value = words[source] >>> bitShift;
+                if (bitShift != 0 && source < endWord)
+                {
+                    value |= words[source + 1] << (64 - bitShift);
+                }
+            }
+            words[i] = value;
+        }
+        words[startWord] = (words[startWord] & ~keepMask) | keep;
+        clearFrom(count - distance);
+    }
+
+    private void clearFrom(int position)
+    {
+        // Bits past the count should always be cleared
+        int wordIndex = position >> 6;
+        if (wordIndex < words.length && (position & 63) != 0)
+        {
+            words[wordIndex] &= (1L << position) - 1;
+            wordIndex++;
+        }
+        if (wordIndex < words.length)
+        {
+            Arrays.fill(words, wordIndex, Math.min(words.length, getWordCount(count)), 0);
+        }
+    }
+
+    private int countBits(int start, int end)
+    {
+        int total = 0;
+        for (int wordIndex = start >> 6; wordIndex <= (end - 1) >> 6; wordIndex++)
+        {
+            long word = words[wordIndex];
+            if (wordIndex == start >> 6)
+            {
+                word &= -1L << start;
+            }
+            if (wordIndex == (end - 1) >> 6 && (end & 63) != 0)
+            {
+                word &= (1L << end) - 1;
+            }
+            total += Long.bitCount(word);
+        }
+        return total;
+    }
+
+    private void ensureCapacity(int count)
+    {
+        int wordCount = getWordCount(count);
+        if (wordCount > words.length)
+        {
+            words = Arrays.copyOf(words, Math.max(wordCount, words.length + words.length / 2));
+        }
+    }
+
+    private static int getWordCount(int count)
+    {
+        return (count + 63) >> 6;
+    }
+}
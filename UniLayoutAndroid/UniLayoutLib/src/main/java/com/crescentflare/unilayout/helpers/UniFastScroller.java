@@ -0,0 +1,253 @@
+package com.crescentflare.unilayout.helpers;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.view.MotionEvent;
+
+/**
+ * UniLayout helper: a fast-scroll thumb with a section index
+ * Maps the thumb to item positions instead of pixels, so it doesn't depend on the (estimated) content height, the host jumps to the position when dragged
+ * When there are sections, their titles are shown in a strip next to the thumb which jumps to the start of the touched section
+ */
+public class UniFastScroller
+{
+    // ---
+    // Constants
+    // ---
+
+    private static final int THUMB_WIDTH_DP = 6;
+    private static final int THUMB_HEIGHT_DP = 48;
+    private static final int TOUCH_WIDTH_DP = 32;
+    private static final int MARGIN_DP = 4;
+    private static final int LABEL_SIZE_DP = 64;
+    private static final int LABEL_TEXT_SIZE_DP = 32;
+    private static final int INDEX_WIDTH_DP = 20;
+    private static final int INDEX_TEXT_SIZE_DP = 11;
+
+
+    // ---
+    // Members
+    // ---
+
+    private Callback callback;
+    private Paint thumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private Paint labelTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private Paint indexTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private RectF drawRect = new RectF();
+    private float density;
+    private float touchOffsetY;
+    private float dragFraction;
+    private int dragPosition = -1;
+    private float indexTouchY;
+    private int indexSection = -1;
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public UniFastScroller(Context context, Callback callback)
+    {
+        this.callback = callback;
+        density = context.getResources().getDisplayMetrics().density;
+        labelTextPaint.setTextSize(LABEL_TEXT_SIZE_DP * density);
+        labelTextPaint.setTextAlign(Paint.Align.CENTER);
+        indexTextPaint.setTextSize(INDEX_TEXT_SIZE_DP * density);
+        indexTextPaint.setTextAlign(Paint.Align.CENTER);
+        setColors(0x80000000, 0xC0000000, 0xFFFFFFFF);
+    }
+
+    public void setColors(int thumbColor, int labelColor, int labelTextColor)
+    {
+        thumbPaint.setColor(thumbColor);
+        labelPaint.setColor(labelColor);
+        labelTextPaint.setColor(labelTextColor);
+        indexTextPaint.setColor(labelColor);
+    }
+
+
+    // ---
+    // State
+    // ---
+
+    public boolean isDragging()
+    {
+        return dragPosition >= 0;
+    }
+
+    public boolean isTouchingIndex()
+    {
+        return indexSection >= 0;
+    }
+
+    private float getThumbTop(int height)
+    {
+        // Follow the finger while dragging, otherwise use the first visible position (including the part scrolled past) relative to the positions which can be scrolled to
+        float fraction = dragFraction;
+        if (!isDragging())
+        {
+            float scrollableCount = callback.getItemCount() - callback.getVisibleItemCount();
+            fraction = scrollableCount > 0 ? callback.getVisiblePosition() / scrollableCount : 0;
+        }
+        return Math.max(0, Math.min(1, fraction)) * (height - THUMB_HEIGHT_DP * density);
+    }
+
+
+    // ---
+    // Touch handling
+    // ---
+
+    public boolean onTouchEvent(MotionEvent event, int width, int height)
+    {
+        // Start dragging when touching near the thumb, then jump to the position of the thumb until released
+        if (callback.getItemCount() - callback.getVisibleItemCount() <= 1)
+        {
+            return false;
+        }
+        float thumbTop = getThumbTop(height);
+        switch (event.getAction() & MotionEvent.ACTION_MASK)
+        {
+            case MotionEvent.ACTION_DOWN:
+                if (event.getX() >= width - TOUCH_WIDTH_DP * density && event.getY() >= thumbTop - MARGIN_DP * density && event.getY() < thumbTop + (THUMB_HEIGHT_DP + MARGIN_DP) * density)
+                {
+                    touchOffsetY = event.getY() - thumbTop;
+                    dragFraction = thumbTop / Math.max(1, height - THUMB_HEIGHT_DP * density);
+                    dragPosition = (int)callback.getVisiblePosition();
+                    return true;
+                }
+                if (callback.getSectionCount() > 0 && event.getX() >= width - (TOUCH_WIDTH_DP + INDEX_WIDTH_DP) * density && event.getX() < width - TOUCH_WIDTH_DP * density)
+                {
+                    touchIndex(event.getY(), height);
+                    return true;
+                }
+                return false;
+            case MotionEvent.ACTION_MOVE:
+                if (isTouchingIndex())
+                {
+                    touchIndex(event.getY(), height);
+                    return true;
+                }
+                if (isDragging())
+                {
+                    dragFraction = Math.max(0, Math.min(1, (event.getY() - touchOffsetY) / Math.max(1, height - THUMB_HEIGHT_DP * density)));
+                    int position = Math.round(dragFraction * Math.max(0, callback.getItemCount() - callback.getVisibleItemCount()));
+                    if (position != dragPosition)
+                    {
+                        dragPosition = position;
+                        callback.onFastScroll(position);
+                    }
+                    return true;
+                }
+                return false;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (isDragging() || isTouchingIndex())
+                {
+                    dragPosition = -1;
+                    indexSection = -1;
+                    return true;
+                }
+                return false;
+            default:
+                return isDragging() || isTouchingIndex();
+        }
+    }
+
+    private void touchIndex(float y, int height)
+    {
+        // Divide the height evenly over the sections, jump to the start of the section when it changes
+        int sectionCount = callback.getSectionCount();
+        int section = Math.max(0, Math.min(sectionCount - 1, (int)(y * sectionCount / Math.max(1, height))));
+        indexTouchY = Math.max(0, Math.min(height, y));
+        if (section != indexSection)
+        {
+            indexSection = section;
+            int position = callback.getPositionForSection(section);
+            if (position >= 0)
+            {
+                callback.onFastScroll(position);
+            }
+        }
+    }
+
+
+    // ---
+    // Drawing
+    // ---
+
+    public void draw(Canvas canvas, int width, int height)
+    {
+        // Draw the thumb at the right edge with the section index next to it, and the title of the section being dragged through or touched
+        if (callback.getItemCount() - callback.getVisibleItemCount() <= 1)
+        {
+            return;
+        }
+        float thumbTop = getThumbTop(height);
+        float thumbRight = width - MARGIN_DP * density;
+        drawRect.set(thumbRight - THUMB_WIDTH_DP * density, thumbTop, thumbRight, thumbTop + THUMB_HEIGHT_DP * density);
+        canvas.drawRoundRect(drawRect, THUMB_WIDTH_DP * density / 2, THUMB_WIDTH_DP * density / 2, thumbPaint);
+        int sectionCount = callback.getSectionCount();
+        if (sectionCount > 0)
+        {
+            drawIndex(canvas, width - (TOUCH_WIDTH_DP + INDEX_WIDTH_DP / 2) * density, height, sectionCount);
+        }
+        if (isTouchingIndex())
+        {
+            drawLabel(canvas, callback.getSectionTitle(indexSection), width - (TOUCH_WIDTH_DP + INDEX_WIDTH_DP + MARGIN_DP) * density, indexTouchY, height);
+        }
+        else if (isDragging())
+        {
+            int section = callback.getSectionForPosition(dragPosition);
+            drawLabel(canvas, section >= 0 ? callback.getSectionTitle(section) : null, thumbRight - (THUMB_WIDTH_DP + MARGIN_DP * 2) * density, thumbTop + THUMB_HEIGHT_DP * density / 2, height);
+        }
+    }
+
+    private void drawIndex(Canvas canvas, float centerX, int height, int sectionCount)
+    {
+        // Skip titles evenly when there are too many sections to fit, touching still selects every section
+        float sectionHeight = (float)height / sectionCount;
+        int step = Math.max(1, (int)Math.ceil(indexTextPaint.getFontSpacing() / Math.max(1, sectionHeight)));
+        float textOffsetY = -(indexTextPaint.descent() + indexTextPaint.ascent()) / 2;
+        for (int section = 0; section < sectionCount; section += step)
+        {
+            String title = callback.getSectionTitle(section);
+            if (title != null && title.length() > 0)
+            {
+                canvas.drawText(title, 0, Math.min(2, title.length()), centerX, (section + 0.5f) * sectionHeight + textOffsetY, indexTextPaint);
+            }
+        }
+    }
+
+    private void drawLabel(Canvas canvas, String title, float labelRight, float centerY, int height)
+    {
+        if (title != null && title.length() > 0)
+        {
+            float labelSize = Math.max(LABEL_SIZE_DP * density, labelTextPaint.measureText(title) + MARGIN_DP * 4 * density);
+            float labelTop = Math.max(0, Math.min(height - LABEL_SIZE_DP * density, centerY - LABEL_SIZE_DP * density / 2));
+            drawRect.set(labelRight - labelSize, labelTop, labelRight, labelTop + LABEL_SIZE_DP * density);
+            canvas.drawRoundRect(drawRect, MARGIN_DP * 2 * density, MARGIN_DP * 2 * density, labelPaint);
+            float textY = labelTop + LABEL_SIZE_DP * density / 2 - (labelTextPaint.descent() + labelTextPaint.ascent()) / 2;
+            canvas.drawText(title, labelRight - labelSize / 2, textY, labelTextPaint);
+        }
+    }
+
+
+    // ---
+    // Callback
+    // ---
+
+    public interface Callback
+    {
+        int getItemCount();
+        int getVisibleItemCount();
+        float getVisiblePosition();
+        void onFastScroll(int position);
+        int getSectionForPosition(int position);
+        int getSectionCount();
+        int getPositionForSection(int section);
+        String getSectionTitle(int section);
+    }
+}
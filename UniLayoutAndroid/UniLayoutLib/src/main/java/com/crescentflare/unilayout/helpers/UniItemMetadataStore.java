@@ -0,0 +1,239 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.Arrays;
+
+/**
+ * UniLayout helper: a store for item metadata
+ * Keeps the measured size, state flags and view type of each item in primitive arrays, growing and shrinking along with the item count
+ */
+public class UniItemMetadataStore
+{
+    // ---
+    // Constants
+    // ---
+
+    public static final int BYTES_PER_ITEM = 4 + 4 + 4 + 1;
+    public static final int NO_VIEW_TYPE = -1;
+    private static final byte FLAG_MEASURED = 1;
+    private static final int MIN_CAPACITY = 16;
+
+
+    // ---
+    // Members
+    // ---
+
+    private int count;
+    private int[] widths = new int[0];
+    private int[] heights = new int[0];
+    private int[] viewTypes = new int[0];
+    private byte[] flags = new byte[0];
+
+
+    // ---
+    // Item count
+    // ---
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public int getCapacity()
+    {
+        return flags.length;
+    }
+
+    public void reset(int count)
+    {
+        this.count = 0;
+        resize(count);
+    }
+
+    public void resize(int count)
+    {
+        // Grow or shrink the backing arrays when needed
+        count = Math.max(0, count);
+        int capacity = flags.length;
+        if (count > capacity)
+        {
+            setCapacity(Math.max(MIN_CAPACITY, Math.max(count, capacity + capacity / 2)));
+        }
+        else if (count < capacity / 4 && capacity > MIN_CAPACITY)
+        {
+            setCapacity(Math.max(MIN_CAPACITY, count + count / 2));
+        }
+
+        // Clear metadata of items added at the end
+        if (count > this.count)
+        {
+            clear(this.count, count);
+        }
+        this.count = count;
+    }
+
+    public void insert(int position, int itemCount)
+    {
+        if (position < 0 || position > count || itemCount <= 0)
+        {
+            return;
+        }
+        int previousCount = count;
+        resize(count + itemCount);
+        int moveCount = previousCount - position;
+        System.arraycopy(widths, position, widths, position + itemCount, moveCount);
+        System.arraycopy(heights, position, heights, position + itemCount, moveCount);
+        System.arraycopy(viewTypes, position, viewTypes, position + itemCount, moveCount);
+        System.arraycopy(flags, position, flags, position + itemCount, moveCount);
+        clear(position, position + itemCount);
+    }
+
+    public void remove(int position, int itemCount)
+    {
+        itemCount = Math.min(itemCount, count - position);
+        if (position < 0 || itemCount <= 0)
+        {
+            return;
+        }
+        int moveCount = count - position - itemCount;
+        System.arraycopy(widths, position + itemCount, widths, position, moveCount);
+        System.arraycopy(heights, position + itemCount, heights, position, moveCount);
+        System.arraycopy(viewTypes, position + itemCount, viewTypes, position, moveCount);
+        System.arraycopy(flags, position + itemCount, flags, position, moveCount);
+        resize(count - itemCount);
+    }
+
+    public void move(int fromPosition, int toPosition)
+    {
+        if (fromPosition < 0 || fromPosition >= count || toPosition < 0 || toPosition >= count || fromPosition == toPosition)
+        {
+            return;
+        }
+        int width = widths[fromPosition];
+        int height = heights[fromPosition];
+        int viewType = viewTypes[fromPosition];
+        byte flag = flags[fromPosition];
+        int start = Math.min(fromPosition, toPosition);
+        int moveCount = Math.abs(toPosition - fromPosition);
+        int direction = fromPosition < toPosition ? 1 : 0;
+        System.arraycopy(widths, start + direction, widths, start + 1 - direction, moveCount);
+        System.arraycopy(heights, start + direction, heights, start + 1 - direction, moveCount);
+        System.arraycopy(viewTypes, start + direction, viewTypes, start + 1 - direction, moveCount);
+        System.arraycopy(flags, start + direction, flags, start + 1 - direction, moveCount);
+        widths[toPosition] = width;
+        heights[toPosition] = height;
+        viewTypes[toPosition] = viewType;
+        flags[toPosition] = flag;
+    }
+
+    public void remap(int[] previousPositions)
+    {
+        // Take the metadata from the previous position of each item, or clear it for new items
+        int previousCount = count;
+        int[] previousWidths = widths;
+        int[] previousHeights = heights;
+        int[] previousViewTypes = viewTypes;
+        byte[] previousFlags = flags;
+        int capacity = Math.max(MIN_CAPACITY, previousPositions.length + previousPositions.length / 2);
+        widths = new int[capacity];
+        heights = new int[capacity];
+        viewTypes = new int[capacity];
+        flags = new byte[capacity];
+        count = previousPositions.length;
+        clear(0, count);
+        for (int i = 0; i < count; i++)
+        {
+            int previousPosition = previousPositions[i];
+            if (previousPosition >= 0 && previousPosition < previousCount)
+            {
+                widths[i] = previousWidths[previousPosition];
+                heights[i] = previousHeights[previousPosition];
+                viewTypes[i] = previousViewTypes[previousPosition];
+                flags[i] = previousFlags[previousPosition];
+            }
+        }
+    }
+
+    private void setCapacity(int capacity)
+    {
+        widths = Arrays.copyOf(widths, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        viewTypes = Arrays.copyOf(viewTypes, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private void clear(int fromPosition, int toPosition)
+    {
+        Arrays.fill(widths, fromPosition, toPosition, 0);
+        Arrays.fill(heights, fromPosition, toPosition, 0);
+        Arrays.fill(viewTypes, fromPosition, toPosition, NO_VIEW_TYPE);
+        Arrays.fill(flags, fromPosition, toPosition, (byte)0);
+    }
+
+
+    // ---
+    // Item metadata
+    // ---
+
+    public boolean isMeasured(int position)
+    {
+        return position >= 0 && position < count && (flags[position] & FLAG_MEASURED) != 0;
+    }
+
+    public int getWidth(int position)
+    {
+        return isMeasured(position) ? widths[position] : 0;
+    }
+
+    public int getHeight(int position)
+    {
+        return isMeasured(position) ? heights[position] : 0;
+    }
+
+    public void setMeasuredSize(int position, int width, int height)
+    {
+        if (position >= 0 && position < count)
+        {
+            widths[position] = width;
+            heights[position] = height;
+            flags[position] |= FLAG_MEASURED;
+        }
+    }
+
+    public void clearMeasuredSize(int position)
+    {
+        if (position >= 0 && position < count)
+        {
+            widths[position] = 0;
+            heights[position] = 0;
+            flags[position] &= ~FLAG_MEASURED;
+        }
+    }
+
+    public int getViewType(int position)
+    {
+        return position >= 0 && position < count ? viewTypes[position] : NO_VIEW_TYPE;
+    }
+
+    public void setViewType(int position, int viewType)
+    {
+        if (position >= 0 && position < count)
+        {
+            viewTypes[position] = viewType;
+        }
+    }
+
+
+    // ---
+    // Memory usage
+    // ---
+
+    public long getMemoryUsage()
+    {
+        return (long)getCapacity() * BYTES_PER_ITEM;
+    }
+
+    public float getMemoryUsagePerItem()
+    {
+        return count > 0 ? (float)getMemoryUsage() / count : 0;
+    }
+}
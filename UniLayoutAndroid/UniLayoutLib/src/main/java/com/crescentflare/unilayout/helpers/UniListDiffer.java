@@ -0,0 +1,669 @@
+package com.crescentflare.unilayout.helpers;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.crescentflare.unilayout.containers.UniReusingContainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * UniLayout helper: calculates the difference between two lists
+ * Finds a minimal set of insertions, removals, moves and changes (using the Myers algorithm) on a background thread and applies them as range updates to an adapter
+ * Lists which differ too much to calculate quickly are applied as a data set change instead
+ */
+public class UniListDiffer<T>
+{
+    // ---
+    // Constants
+    // ---
+
+    public static final int DEFAULT_MAX_EDIT_DISTANCE = 2000;
+    private static final int MATCHED = -2;
+    private static final int UNMATCHED = -1;
+    private static final Snake CANCELLED = new Snake(0, 0, 0, 0, false);
+    private static final Snake TOO_DIFFERENT = new Snake(0, 0, 0, 0, false);
+
+
+    // ---
+    // Members
+    // ---
+
+    private static ExecutorService executor;
+
+    private final ItemCallback<T> callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile int generation;
+    private int maxEditDistance = DEFAULT_MAX_EDIT_DISTANCE;
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public UniListDiffer(ItemCallback<T> callback)
+    {
+        this.callback = callback;
+    }
+
+    public void setMaxEditDistance(int maxEditDistance)
+    {
+        // The calculation time grows with the square of the number of insertions and removals, beyond the limit the result is a data set change
+        this.maxEditDistance = Math.max(0, maxEditDistance);
+    }
+
+    public int getMaxEditDistance()
+    {
+        return maxEditDistance;
+    }
+
+
+    // ---
+    // Calculate on a background thread
+    // ---
+
+    public void submit(final List<T> oldList, final List<T> newList, final ResultListener<T> listener)
+    {
+        // Lists should not be changed while calculating, earlier submissions stop calculating and their results are dropped
+        final int checkGeneration = ++generation;
+        final int checkMaxEditDistance = maxEditDistance;
+        getExecutor().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                if (checkGeneration != generation)
+                {
+                    return;
+                }
+                final Result result = calculate(oldList, newList, callback, checkMaxEditDistance, UniListDiffer.this, checkGeneration);
+                if (result == null)
+                {
+                    return;
+                }
+                mainHandler.post(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        if (checkGeneration == generation)
+                        {
+                            listener.onDiffCalculated(newList, result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    public void cancel()
+    {
+        generation++;
+    }
+
+    private static synchronized ExecutorService getExecutor()
+    {
+        // Shared by all differs, idle threads are stopped after a while
+        if (executor == null)
+        {
+            executor = Executors.newCachedThreadPool(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "UniListDiffer");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+
+    // ---
+    // Calculate the difference
+    // ---
+
+    public static <T> Result calculate(List<T> oldList, List<T> newList, ItemCallback<T> callback)
+    {
+        return calculate(oldList, newList, callback, DEFAULT_MAX_EDIT_DISTANCE);
+    }
+
+    public static <T> Result calculate(List<T> oldList, List<T> newList, ItemCallback<T> callback, int maxEditDistance)
+    {
+        return calculate(oldList, newList, callback, maxEditDistance, null, 0);
+    }
+
+    private static <T> Result calculate(List<T> oldList, List<T> newList, ItemCallback<T> callback, int maxEditDistance, UniListDiffer<?> differ, int checkGeneration)
+    {
+        // Skip the common start and end, most updates only change a small part of the list
+        int oldSize = oldList.size();
+        int newSize = newList.size();
+        int prefix = 0;
+        int suffix = 0;
+        while (prefix < oldSize && prefix < newSize && callback.areItemsTheSame(oldList.get(prefix), newList.get(prefix)))
+        {
+            prefix++;
+        }
+        while (suffix < oldSize - prefix && suffix < newSize - prefix && callback.areItemsTheSame(oldList.get(oldSize - suffix - 1), newList.get(newSize - suffix - 1)))
+        {
+            suffix++;
+        }
+        List<Diagonal> diagonals = new ArrayList<>();
+        if (prefix > 0)
+        {
+            diagonals.add(new Diagonal(0, 0, prefix));
+        }
+        if (suffix > 0)
+        {
+            diagonals.add(new Diagonal(oldSize - suffix, newSize - suffix, suffix));
+        }
+
+        // Find the diagonals (items which stay the same) in the remaining part by recursively looking for the middle snake
+        List<Range> stack = new ArrayList<>();
+        stack.add(new Range(prefix, oldSize - suffix, prefix, newSize - suffix));
+        int max = (oldSize + newSize - prefix * 2 - suffix * 2 + 1) / 2;
+        int[] forward = new int[max * 2 + 3];
+        int[] backward = new int[max * 2 + 3];
+        while (!stack.isEmpty())
+        {
+            Range range = stack.remove(stack.size() - 1);
+            Snake snake = midPoint(oldList, newList, callback, range, forward, backward, max + 1, maxEditDistance, differ, checkGeneration);
+            if (snake == CANCELLED)
+            {
+                return null;
+            }
+            if (snake == TOO_DIFFERENT)
+            {
+                Result result = new Result();
+                result.dataSetChanged = true;
+                return result;
+            }
+            if (snake != null)
+            {
+                if (snake.diagonalSize() > 0)
+                {
+                    diagonals.add(snake.toDiagonal());
+                }
+                stack.add(new Range(range.oldStart, snake.startX, range.newStart, snake.startY));
+                stack.add(new Range(snake.endX, range.oldEnd, snake.endY, range.newEnd));
+            }
+        }
+        Collections.sort(diagonals, new Comparator<Diagonal>()
+        {
+            @Override
+            public int compare(Diagonal first, Diagonal second)
+            {
+                return first.x - second.x;
+            }
+        });
+
+        // Mark the items which stay in place, then pair the removed items with inserted ones which are the same to find the moves
+        int[] oldTargets = new int[oldSize];
+        int[] newSources = new int[newSize];
+        Arrays.fill(oldTargets, UNMATCHED);
+        Arrays.fill(newSources, UNMATCHED);
+        for (Diagonal diagonal : diagonals)
+        {
+            Arrays.fill(oldTargets, diagonal.x, diagonal.x + diagonal.size, MATCHED);
+            Arrays.fill(newSources, diagonal.y, diagonal.y + diagonal.size, MATCHED);
+        }
+        int[] inserted = new int[newSize];
+        int insertedCount = 0;
+        for (int y = 0; y < newSize; y++)
+        {
+            if (newSources[y] == UNMATCHED)
+            {
+                inserted[insertedCount++] = y;
+            }
+        }
+        for (int x = 0; x < oldSize && insertedCount > 0; x++)
+        {
+            if (oldTargets[x] == UNMATCHED)
+            {
+                if (differ != null && differ.generation != checkGeneration)
+                {
+                    return null;
+                }
+                for (int i = 0; i < insertedCount; i++)
+                {
+                    int y = inserted[i];
+                    if (callback.areItemsTheSame(oldList.get(x), newList.get(y)))
+                    {
+                        oldTargets[x] = y;
+                        newSources[y] = x;
+                        inserted[i] = inserted[--insertedCount];
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Walk backwards through the diagonals to create the operations, this keeps earlier positions valid while applying them
+        // Moved items are placed when both ends are found, the other end is remembered by its distance to the end of the list which doesn't change by operations at earlier positions
+        Result result = new Result();
+        List<PostponedMove> postponedMoves = new ArrayList<>();
+        int currentSize = oldSize;
+        int posX = oldSize;
+        int posY = newSize;
+        for (int i = diagonals.size(); i >= 0; i--)
+        {
+            Diagonal diagonal = i > 0 ? diagonals.get(i - 1) : new Diagonal(0, 0, 0);
+            int endX = diagonal.x + diagonal.size;
+            int endY = diagonal.y + diagonal.size;
+            int removeEnd = posX;
+            while (posX > endX)
+            {
+                posX--;
+                int newPosition = oldTargets[posX];
+                if (newPosition >= 0)
+                {
+                    if (removeEnd > posX + 1)
+                    {
+                        result.add(Result.REMOVE, posX + 1, removeEnd - posX - 1);
+                        currentSize -= removeEnd - posX - 1;
+                    }
+                    removeEnd = posX;
+                    PostponedMove move = takePostponedMove(postponedMoves, newPosition, false);
+                    if (move != null)
+                    {
+                        int toPosition = currentSize - move.distance - 1;
+                        result.add(Result.MOVE, posX, toPosition);
+                        if (!callback.areContentsTheSame(oldList.get(posX), newList.get(newPosition)))
+                        {
+                            result.add(Result.CHANGE, toPosition, 1);
+                        }
+                    }
+                    else
+                    {
+                        postponedMoves.add(new PostponedMove(posX, currentSize - posX - 1, true));
+                    }
+                }
+            }
+            if (removeEnd > posX)
+            {
+                result.add(Result.REMOVE, posX, removeEnd - posX);
+                currentSize -= removeEnd - posX;
+            }
+            int insertCount = 0;
+            while (posY > endY)
+            {
+                posY--;
+                int oldPosition = newSources[posY];
+                if (oldPosition < 0)
+                {
+                    insertCount++;
+                    continue;
+                }
+                if (insertCount > 0)
+                {
+                    result.add(Result.INSERT, posX, insertCount);
+                    currentSize += insertCount;
+                    insertCount = 0;
+                }
+                PostponedMove move = takePostponedMove(postponedMoves, oldPosition, true);
+                if (move != null)
+                {
+                    result.add(Result.MOVE, currentSize - move.distance - 1, posX);
+                    if (!callback.areContentsTheSame(oldList.get(oldPosition), newList.get(posY)))
+                    {
+                        result.add(Result.CHANGE, posX, 1);
+                    }
+                }
+                else
+                {
+                    postponedMoves.add(new PostponedMove(posY, currentSize - posX, false));
+                }
+            }
+            if (insertCount > 0)
+            {
+                result.add(Result.INSERT, posX, insertCount);
+                currentSize += insertCount;
+            }
+            int changedEnd = -1;
+            for (int j = diagonal.size - 1; j >= 0; j--)
+            {
+                boolean changed = !callback.areContentsTheSame(oldList.get(diagonal.x + j), newList.get(diagonal.y + j));
+                if (changed && changedEnd < 0)
+                {
+                    changedEnd = diagonal.x + j + 1;
+                }
+                else if (!changed && changedEnd >= 0)
+                {
+                    result.add(Result.CHANGE, diagonal.x + j + 1, changedEnd - diagonal.x - j - 1);
+                    changedEnd = -1;
+                }
+            }
+            if (changedEnd >= 0)
+            {
+                result.add(Result.CHANGE, diagonal.x, changedEnd - diagonal.x);
+            }
+            posX = diagonal.x;
+            posY = diagonal.y;
+        }
+        return result;
+    }
+
+    private static PostponedMove takePostponedMove(List<PostponedMove> postponedMoves, int position, boolean removal)
+    {
+        // Moves remembered after the one found are further to the start of the list, placing or taking out the item changes their distance to the end
+        for (int i = 0; i < postponedMoves.size(); i++)
+        {
+            PostponedMove move = postponedMoves.get(i);
+            if (move.position == position && move.removal == removal)
+            {
+                postponedMoves.remove(i);
+                for (int j = i; j < postponedMoves.size(); j++)
+                {
+                    postponedMoves.get(j).distance += removal ? -1 : 1;
+                }
+                return move;
+            }
+        }
+        return null;
+    }
+
+    private static <T> Snake midPoint(List<T> oldList, List<T> newList, ItemCallback<T> callback, Range range, int[] forward, int[] backward, int center, int maxEditDistance, UniListDiffer<?> differ, int checkGeneration)
+    {
+        if (range.oldSize() < 1 || range.newSize() < 1)
+        {
+            return null;
+        }
+        int max = (range.oldSize() + range.newSize() + 1) / 2;
+        forward[center + 1] = range.oldStart;
+        backward[center + 1] = range.oldEnd;
+        for (int d = 0; d < max; d++)
+        {
+            if (differ != null && differ.generation != checkGeneration)
+            {
+                return CANCELLED;
+            }
+            if (d * 2 > maxEditDistance + 1)
+            {
+                return TOO_DIFFERENT;
+            }
+            Snake snake = forwardSnake(oldList, newList, callback, range, forward, backward, center, d);
+            if (snake != null)
+            {
+                return snake;
+            }
+            snake = backwardSnake(oldList, newList, callback, range, forward, backward, center, d);
+            if (snake != null)
+            {
+                return snake;
+            }
+        }
+        return null;
+    }
+
+    private static <T> Snake forwardSnake(List<T> oldList, List<T> newList, ItemCallback<T> callback, Range range, int[] forward, int[] backward, int center, int d)
+    {
+        boolean checkForSnake = Math.abs(range.oldSize() - range.newSize()) % 2 == 1;
+        int delta = range.oldSize() - range.newSize();
+        for (int k = -d; k <= d; k += 2)
+        {
+            int startX;
+            int x;
+            if (k == -d || (k != d && forward[center + k + 1] > forward[center + k - 1]))
+            {
+                x = startX = forward[center + k + 1];
+            }
+            else
+            {
+                startX = forward[center + k - 1];
+                x = startX + 1;
+            }
+            int y = range.newStart + (x - range.oldStart) - k;
+            int startY = (d == 0 || x != startX) ? y : y - 1;
+            while (x < range.oldEnd && y < range.newEnd && callback.areItemsTheSame(oldList.get(x), newList.get(y)))
+            {
+                x++;
+                y++;
+            }
+            forward[center + k] = x;
+            if (checkForSnake)
+            {
+                int backwardK = delta - k;
+                if (backwardK >= -d + 1 && backwardK <= d - 1 && backward[center + backwardK] <= x)
+                {
+                    return new Snake(startX, startY, x, y, false);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static <T> Snake backwardSnake(List<T> oldList, List<T> newList, ItemCallback<T> callback, Range range, int[] forward, int[] backward, int center, int d)
+    {
+        boolean checkForSnake = (range.oldSize() - range.newSize()) % 2 == 0;
+        int delta = range.oldSize() - range.newSize();
+        for (int k = -d; k <= d; k += 2)
+        {
+            int startX;
+            int x;
+            if (k == -d || (k != d && backward[center + k + 1] < backward[center + k - 1]))
+            {
+                x = startX = backward[center + k + 1];
+            }
+            else
+            {
+                startX = backward[center + k - 1];
+                x = startX - 1;
+            }
+            int y = range.newEnd - ((range.oldEnd - x) - k);
+            int startY = (d == 0 || x != startX) ? y : y + 1;
+            while (x > range.oldStart && y > range.newStart && callback.areItemsTheSame(oldList.get(x - 1), newList.get(y - 1)))
+            {
+                x--;
+                y--;
+            }
+            backward[center + k] = x;
+            if (checkForSnake)
+            {
+                int forwardK = delta - k;
+                if (forwardK >= -d && forwardK <= d && forward[center + forwardK] >= x)
+                {
+                    return new Snake(x, y, startX, startY, true);
+                }
+            }
+        }
+        return null;
+    }
+
+
+    // ---
+    // Result with the operations to apply
+    // ---
+
+    public static class Result
+    {
+        private static final int INSERT = 0;
+        private static final int REMOVE = 1;
+        private static final int CHANGE = 2;
+        private static final int MOVE = 3;
+
+        private int[] operations = new int[48];
+        private int operationCount;
+        private boolean dataSetChanged;
+
+        private void add(int type, int position, int itemCount)
+        {
+            if (operationCount * 3 + 3 > operations.length)
+            {
+                int[] newOperations = new int[operations.length * 2];
+                System.arraycopy(operations, 0, newOperations, 0, operations.length);
+                operations = newOperations;
+            }
+            operations[operationCount * 3] = type;
+            operations[operationCount * 3 + 1] = position;
+            operations[operationCount * 3 + 2] = itemCount;
+            operationCount++;
+        }
+
+        public int getOperationCount()
+        {
+            return operationCount;
+        }
+
+        public boolean isDataSetChanged()
+        {
+            return dataSetChanged;
+        }
+
+        public void dispatchTo(UniReusingContainer.Adapter adapter)
+        {
+            if (dataSetChanged)
+            {
+                adapter.notifyDataSetChanged();
+                return;
+            }
+            adapter.beginUpdates();
+            for (int i = 0; i < operationCount; i++)
+            {
+                int position = operations[i * 3 + 1];
+                int itemCount = operations[i * 3 + 2];
+                switch (operations[i * 3])
+                {
+                    case INSERT:
+                        adapter.notifyItemRangeInserted(position, itemCount);
+                        break;
+                    case REMOVE:
+                        adapter.notifyItemRangeRemoved(position, itemCount);
+                        break;
+                    case CHANGE:
+                        adapter.notifyItemRangeChanged(position, itemCount);
+                        break;
+                    case MOVE:
+                        adapter.notifyItemMoved(position, itemCount);
+                        break;
+                }
+            }
+            adapter.endUpdates();
+        }
+    }
+
+
+    // ---
+    // Callbacks
+    // ---
+
+    public interface ItemCallback<T>
+    {
+        boolean areItemsTheSame(T oldItem, T newItem);
+        boolean areContentsTheSame(T oldItem, T newItem);
+    }
+
+    public interface ResultListener<T>
+    {
+        void onDiffCalculated(List<T> newList, Result result);
+    }
+
+
+    // ---
+    // Internal path structures
+    // ---
+
+    private static class Range
+    {
+        private int oldStart;
+        private int oldEnd;
+        private int newStart;
+        private int newEnd;
+
+        private Range(int oldStart, int oldEnd, int newStart, int newEnd)
+        {
+            this.oldStart = oldStart;
+            this.oldEnd = oldEnd;
+            this.newStart = newStart;
+            this.newEnd = newEnd;
+        }
+
+        private int oldSize()
+        {
+            return oldEnd - oldStart;
+        }
+
+        private int newSize()
+        {
+            return newEnd - newStart;
+        }
+    }
+
+    private static class Snake
+    {
+        private int startX;
+        private int startY;
+        private int endX;
+        private int endY;
+        private boolean reverse;
+
+        private Snake(int startX, int startY, int endX, int endY, boolean reverse)
+        {
+            this.startX = startX;
+            this.startY = startY;
+            this.endX = endX;
+            this.endY = endY;
+            this.reverse = reverse;
+        }
+
+        private int diagonalSize()
+        {
+            return Math.min(endX - startX, endY - startY);
+        }
+
+        private Diagonal toDiagonal()
+        {
+            if (endY - startY == endX - startX)
+            {
+                return new Diagonal(startX, startY, endX - startX);
+            }
+            if (reverse)
+            {
+                return new Diagonal(startX, startY, diagonalSize());
+            }
+            if (endY - startY > endX - startX)
+            {
+                return new Diagonal(startX, startY + 1, diagonalSize());
+            }
+            return new Diagonal(startX + 1, startY, diagonalSize());
+        }
+    }
+
+    private static class PostponedMove
+    {
+        private int position;
+        private int distance;
+        private boolean removal;
+
+        private PostponedMove(int position, int distance, boolean removal)
+        {
+            this.position = position;
+            this.distance = distance;
+            this.removal = removal;
+        }
+    }
+
+    private static class Diagonal
+    {
+        private int x;
+        private int y;
+        private int size;
+
+        private Diagonal(int x, int y, int size)
+        {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.Arrays;
+
+/**
+ * UniLayout helper: a cache of measured item sizes
+ * Keeps the measured sizes for a few different widths together with the content version they were measured for, items which didn't change don't need to be measured again
+ * When the adapter reports content versions, items keep their version and sizes through a refresh of the data set if their content is the same
+ */
+public class UniMeasureCache
+{
+    // ---
+    // Constants
+    // ---
+
+    public static final int NO_WIDTH = -1;
+    public static final long NO_CONTENT_VERSION = -1;
+    private static final int NO_VERSION = 0;
+    private static final int MIN_CAPACITY = 16;
+
+
+    // ---
+    // Members
+    // ---
+
+    private int count;
+    private int nextVersion = NO_VERSION + 1;
+    private int[] versions = new int[0];
+    private long[] contentVersions = new long[0];
+    private Slot[] slots;
+    private Slot activeSlot;
+    private int activeWidth = NO_WIDTH;
+    private long useCounter;
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public UniMeasureCache(int widthCount)
+    {
+        slots = new Slot[Math.max(1, widthCount)];
+    }
+
+
+    // ---
+    // Item count
+    // ---
+
+    public int getCount()
+    {
+        return count;
+    }
+
+    public void reset(int count)
+    {
+        // Start with new content versions for all items, cached sizes (and views bound to older versions) won't match anymore
+        this.count = Math.max(0, count);
+        if (versions.length < this.count || versions.length > Math.max(MIN_CAPACITY, this.count * 4))
+        {
+            versions = new int[Math.max(MIN_CAPACITY, this.count + this.count / 2)];
+            contentVersions = new long[versions.length];
+        }
+        assignVersions(0, this.count);
+        Arrays.fill(contentVersions, NO_CONTENT_VERSION);
+        Arrays.fill(slots, null);
+        activeSlot = null;
+    }
+
+    public void insert(int position, int itemCount)
+    {
+        if (position < 0 || position > count || itemCount <= 0)
+        {
+            return;
+        }
+        ensureCapacity(count + itemCount);
+        int moveCount = count - position;
+        System.arraycopy(versions, position, versions, position + itemCount, moveCount);
+        System.arraycopy(contentVersions, position, contentVersions, position + itemCount, moveCount);
+        assignVersions(position, position + itemCount);
+        Arrays.fill(contentVersions, position, position + itemCount, NO_CONTENT_VERSION);
+        for (Slot slot : slots)
+        {
+            if (slot != null)
+            {
+                slot.ensureCapacity(versions.length);
+                System.arraycopy(slot.widths, position, slot.widths, position + itemCount, moveCount);
+                System.arraycopy(slot.heights, position, slot.heights, position + itemCount, moveCount);
+                System.arraycopy(slot.versions, position, slot.versions, position + itemCount, moveCount);
+                Arrays.fill(slot.versions, position, position + itemCount, NO_VERSION);
+            }
+        }
+        count += itemCount;
+    }
+
+    public void remove(int position, int itemCount)
+    {
+        itemCount = Math.min(itemCount, count - position);
+        if (position < 0 || itemCount <= 0)
+        {
+            return;
+        }
+        int moveCount = count - position - itemCount;
+        System.arraycopy(versions, position + itemCount, versions, position, moveCount);
+        System.arraycopy(contentVersions, position + itemCount, contentVersions, position, moveCount);
+        for (Slot slot : slots)
+        {
+            if (slot != null)
+            {
+                System.arraycopy(slot.widths, position + itemCount, slot.widths, position, moveCount);
+                System.arraycopy(slot.heights, position + itemCount, slot.heights, position, moveCount);
+                System.arraycopy(slot.versions, position + itemCount, slot.versions, position, moveCount);
+            }
+        }
+        count -= itemCount;
+    }
+
+    public void move(int fromPosition, int toPosition)
+    {
+        if (fromPosition < 0 || fromPosition >= count || toPosition < 0 || toPosition >= count || fromPosition == toPosition)
+        {
+            return;
+        }
+        moveItem(versions, fromPosition, toPosition);
+        moveItem(contentVersions, fromPosition, toPosition);
+        for (Slot slot : slots)
+        {
+            if (slot != null)
+            {
+                moveItem(slot.widths, fromPosition, toPosition);
+                moveItem(slot.heights, fromPosition, toPosition);
+                moveItem(slot.versions, fromPosition, toPosition);
+            }
+        }
+    }
+
+
+    // ---
+    // Content versions
+    // ---
+
+    public int getVersion(int position)
+    {
+        return position >= 0 && position < count ? versions[position] : NO_VERSION;
+    }
+
+    public void invalidate(int position, int itemCount)
+    {
+        int fromPosition = Math.max(0, position);
+        int toPosition = Math.min(count, position + itemCount);
+        assignVersions(fromPosition, toPosition);
+        if (fromPosition < toPosition)
+        {
+            Arrays.fill(contentVersions, fromPosition, toPosition, NO_CONTENT_VERSION);
+        }
+    }
+
+    public void setContentVersion(int position, long contentVersion)
+    {
+        if (position >= 0 && position < count)
+        {
+            contentVersions[position] = contentVersion;
+        }
+    }
+
+    public void remap(int[] previousPositions, long[] newContentVersions)
+    {
+        // Items keep their version and cached sizes when the content version is known and the same as before, the others get a new version
+        int newCount = previousPositions.length;
+        int[] newVersions = new int[Math.max(MIN_CAPACITY, newCount + newCount / 2)];
+        for (Slot slot : slots)
+        {
+            if (slot != null)
+            {
+                slot.remap(previousPositions, newVersions.length);
+            }
+        }
+        for (int i = 0; i < newCount; i++)
+        {
+            int previousPosition = previousPositions[i];
+            if (previousPosition >= 0 && previousPosition < count && newContentVersions[i] != NO_CONTENT_VERSION && newContentVersions[i] == contentVersions[previousPosition])
+            {
+                newVersions[i] = versions[previousPosition];
+            }
+            else
+            {
+                newVersions[i] = nextVersion++;
+                if (nextVersion == NO_VERSION)
+                {
+                    nextVersion++;
+                }
+            }
+        }
+        versions = newVersions;
+        contentVersions = Arrays.copyOf(newContentVersions, newVersions.length);
+        Arrays.fill(contentVersions, newCount, contentVersions.length, NO_CONTENT_VERSION);
+        count = newCount;
+    }
+
+
+    // ---
+    // Widths
+    // ---
+
+    public int getActiveWidth()
+    {
+        return activeWidth;
+    }
+
+    public boolean setActiveWidth(int width)
+    {
+        // Returns true if the width changed from an earlier one, then sizes should be taken from the cache again
+        if (width == activeWidth)
+        {
+            return false;
+        }
+        boolean changed = activeWidth != NO_WIDTH;
+        activeWidth = width;
+        activeSlot = null;
+        for (Slot slot : slots)
+        {
+            if (slot != null && slot.width == width)
+            {
+                activeSlot = slot;
+                activeSlot.lastUse = ++useCounter;
+                break;
+            }
+        }
+        return changed;
+    }
+
+
+    // ---
+    // Cached sizes for the active width
+    // ---
+
+    public boolean isCached(int position)
+    {
+        return activeSlot != null && position >= 0 && position < count && activeSlot.versions[position] == versions[position];
+    }
+
+    public int getWidth(int position)
+    {
+        return isCached(position) ? activeSlot.widths[position] : 0;
+    }
+
+    public int getHeight(int position)
+    {
+        return isCached(position) ? activeSlot.heights[position] : 0;
+    }
+
+    public void put(int position, int width, int height)
+    {
+        if (position < 0 || position >= count || activeWidth == NO_WIDTH)
+        {
+            return;
+        }
+        if (activeSlot == null)
+        {
+            activeSlot = obtainSlot();
+        }
+        activeSlot.ensureCapacity(versions.length);
+        activeSlot.widths[position] = width;
+        activeSlot.heights[position] = height;
+        activeSlot.versions[position] = versions[position];
+    }
+
+
+    // ---
+    // Helpers
+    // ---
+
+    private Slot obtainSlot()
+    {
+        // Use an empty slot, or replace the least recently used width
+        int index = 0;
+        for (int i = 0; i < slots.length; i++)
+        {
+            if (slots[i] == null)
+            {
+                index = i;
+                break;
+            }
+            if (slots[i].lastUse < slots[index].lastUse)
+            {
+                index = i;
+            }
+        }
+        Slot slot = slots[index];
+        if (slot == null)
+        {
+            slot = new Slot();
+            slots[index] = slot;
+        }
+        else
+        {
+            Arrays.fill(slot.versions, NO_VERSION);
+        }
+        slot.width = activeWidth;
+        slot.lastUse = ++useCounter;
+        return slot;
+    }
+
+    private void assignVersions(int fromPosition, int toPosition)
+    {
+        // Each item gets a unique version, so a version identifies both the item and its content
+        for (int i = fromPosition; i < toPosition; i++)
+        {
+            versions[i] = nextVersion++;
+            if (nextVersion == NO_VERSION)
+            {
+                nextVersion++;
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > versions.length)
+        {
+            versions = Arrays.copyOf(versions, Math.max(MIN_CAPACITY, Math.max(capacity, versions.length + versions.length / 2)));
+            contentVersions = Arrays.copyOf(contentVersions, versions.length);
+        }
+    }
+
+    private static void moveItem(int[] array, int fromPosition, int toPosition)
+    {
+        int value = array[fromPosition];
+        if (fromPosition < toPosition)
+        {
+            System.arraycopy(array, fromPosition + 1, array, fromPosition, toPosition - fromPosition);
+        }
+        else
+        {
+            System.arraycopy(array, toPosition, array, toPosition + 1, fromPosition - toPosition);
+        }
+        array[toPosition] = value;
+    }
+
+    private static void moveItem(long[] array, int fromPosition, int toPosition)
+    {
+        long value = array[fromPosition];
+        if (fromPosition < toPosition)
+        {
+            System.arraycopy(array, fromPosition + 1, array, fromPosition, toPosition - fromPosition);
+        }
+        else
+        {
+            System.arraycopy(array, toPosition, array, toPosition + 1, fromPosition - toPosition);
+        }
+        array[toPosition] = value;
+    }
+
+
+    // ---
+    // Sizes measured for one width
+    // ---
+
+    private static class Slot
+    {
+        private int width = NO_WIDTH;
+        private long lastUse;
+        private int[] widths = new int[0];
+        private int[] heights = new int[0];
+        private int[] versions = new int[0];
+
+        private void ensureCapacity(int capacity)
+        {
+            if (capacity > versions.length)
+            {
+                widths = Arrays.copyOf(widths, capacity);
+                heights = Arrays.copyOf(heights, capacity);
+                versions = Arrays.copyOf(versions, capacity);
+            }
+        }
+
+        private void remap(int[] previousPositions, int capacity)
+        {
+            // Sizes move along with the items, they're only used when the item keeps its content version
+            int[] newWidths = new int[capacity];
+            int[] newHeights = new int[capacity];
+            int[] newVersions = new int[capacity];
+            for (int i = 0; i < previousPositions.length; i++)
+            {
+                int previousPosition = previousPositions[i];
+                if (previousPosition >= 0 && previousPosition < versions.length)
+                {
+                    newWidths[i] = widths[previousPosition];
+                    newHeights[i] = heights[previousPosition];
+                    newVersions[i] = versions[previousPosition];
+                }
+            }
+            widths = newWidths;
+            heights = newHeights;
+            versions = newVersions;
+        }
+    }
+}
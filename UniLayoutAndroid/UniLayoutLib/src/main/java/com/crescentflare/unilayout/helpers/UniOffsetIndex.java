@@ -0,0 +1,372 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.Arrays;
+
+/**
+ * UniLayout helper: an index of item sizes
+ * Keeps track of measured item sizes in a binary indexed tree to look up offsets, positions and totals in logarithmic time
+ * Unmeasured items can be counted per view type, so each view type can use its own estimate, the trees for these are only allocated when a view type is used
+ */
+public class UniOffsetIndex
+{
+    // ---
+    // Constants
+    // ---
+
+    public static final int MAX_ESTIMATE_GROUPS = 8;
+    public static final int DEFAULT_ESTIMATE_GROUP = 0;
+    private static final byte MEASURED_FLAG = (byte)0x80;
+    private static final byte GROUP_MASK = 0x7F;
+
+
+    // ---
+    // Members
+    // ---
+
+    private int count;
+    private int[] sizeTree = new int[1];
+    private int[] measuredTree = new int[1];
+    private int[] crossSizeTree = new int[2];
+    private int crossSizeLeafStart = 1;
+    private int measuredSize;
+    private int measuredCount;
+    private byte[] groups = new byte[0];
+    private int[][] groupTrees = new int[MAX_ESTIMATE_GROUPS][];
+    private int[] groupCounts = new int[MAX_ESTIMATE_GROUPS];
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public void reset(int count)
+    {
+        // Reuse the trees if the size is about the same, otherwise allocate new ones
+        this.count = Math.max(0, count);
+        int leafStart = 1;
+        while (leafStart < this.count)
+        {
+            leafStart *= 2;
+        }
+        if (sizeTree.length > this.count && sizeTree.length <= this.count * 4 + 1 && leafStart == crossSizeLeafStart)
+        {
+            Arrays.fill(sizeTree, 0);
+            Arrays.fill(measuredTree, 0);
+            Arrays.fill(crossSizeTree, 0);
+        }
+        else
+        {
+            sizeTree = new int[this.count + this.count / 2 + 1];
+            measuredTree = new int[sizeTree.length];
+            crossSizeTree = new int[leafStart * 2];
+            crossSizeLeafStart = leafStart;
+        }
+        measuredSize = 0;
+        measuredCount = 0;
+        clearGroups();
+    }
+
+    public void rebuild(UniItemMetadataStore itemMetadata)
+    {
+        rebuild(itemMetadata, false);
+    }
+
+    public void rebuild(UniItemMetadataStore itemMetadata, boolean horizontal)
+    {
+        // Fill the leaves of the trees, then propagate to the parents in linear time, horizontal lists index the widths instead of the heights
+        reset(itemMetadata.getCount());
+        for (int i = 0; i < count; i++)
+        {
+            if (itemMetadata.isMeasured(i))
+            {
+                sizeTree[i + 1] = horizontal ? itemMetadata.getWidth(i) : itemMetadata.getHeight(i);
+                measuredTree[i + 1] = 1;
+                crossSizeTree[crossSizeLeafStart + i] = horizontal ? itemMetadata.getHeight(i) : itemMetadata.getWidth(i);
+                measuredSize += sizeTree[i + 1];
+                measuredCount++;
+            }
+        }
+        for (int i = 1; i <= count; i++)
+        {
+            int parent = i + (i & -i);
+            if (parent <= count)
+            {
+                sizeTree[parent] += sizeTree[i];
+                measuredTree[parent] += measuredTree[i];
+            }
+        }
+        for (int i = crossSizeLeafStart - 1; i > 0; i--)
+        {
+            crossSizeTree[i] = Math.max(crossSizeTree[i * 2], crossSizeTree[i * 2 + 1]);
+        }
+        setViewTypes(itemMetadata);
+    }
+
+    public void setViewTypes(UniItemMetadataStore itemMetadata)
+    {
+        // Count the unmeasured items per estimate group, then propagate to the parents in linear time, the default group isn't stored
+        clearGroups();
+        for (int i = 0; i < count && i < itemMetadata.getCount(); i++)
+        {
+            int group = getEstimateGroup(itemMetadata.getViewType(i));
+            boolean measured = itemMetadata.isMeasured(i);
+            groups[i] = (byte)(group | (measured ? MEASURED_FLAG : 0));
+            if (group != DEFAULT_ESTIMATE_GROUP && !measured)
+            {
+                getGroupTree(group)[i + 1]++;
+                groupCounts[group]++;
+            }
+        }
+        for (int group = 1; group < MAX_ESTIMATE_GROUPS; group++)
+        {
+            int[] tree = groupTrees[group];
+            if (groupCounts[group] > 0)
+            {
+                for (int i = 1; i <= count; i++)
+                {
+                    int parent = i + (i & -i);
+                    if (parent <= count)
+                    {
+                        tree[parent] += tree[i];
+                    }
+                }
+            }
+        }
+    }
+
+    public void setViewType(int position, int viewType)
+    {
+        // Move an unmeasured item to the count of its new group
+        if (position < 0 || position >= count)
+        {
+            return;
+        }
+        int previousGroup = groups[position] & GROUP_MASK;
+        int group = getEstimateGroup(viewType);
+        boolean measured = (groups[position] & MEASURED_FLAG) != 0;
+        if (group != previousGroup && !measured)
+        {
+            if (previousGroup != DEFAULT_ESTIMATE_GROUP)
+            {
+                addGroupCount(previousGroup, position, -1);
+            }
+            if (group != DEFAULT_ESTIMATE_GROUP)
+            {
+                addGroupCount(group, position, 1);
+            }
+        }
+        groups[position] = (byte)(group | (measured ? MEASURED_FLAG : 0));
+    }
+
+    public static int getEstimateGroup(int viewType)
+    {
+        // View types past the group limit share the default group
+        return viewType >= 0 && viewType < MAX_ESTIMATE_GROUPS - 1 ? viewType + 1 : DEFAULT_ESTIMATE_GROUP;
+    }
+
+    public int getCount()
+    {
+        return count;
+    }
+
+
+    // ---
+    // Update sizes
+    // ---
+
+    public void addSize(int position, int sizeDelta, int measuredDelta)
+    {
+        if (position < 0 || position >= count)
+        {
+            return;
+        }
+        measuredSize += sizeDelta;
+        measuredCount += measuredDelta;
+        for (int i = position + 1; i <= count; i += i & -i)
+        {
+            sizeTree[i] += sizeDelta;
+            measuredTree[i] += measuredDelta;
+        }
+        if (measuredDelta != 0)
+        {
+            int group = groups[position] & GROUP_MASK;
+            groups[position] = (byte)(group | (measuredDelta > 0 ? MEASURED_FLAG : 0));
+            if (group != DEFAULT_ESTIMATE_GROUP)
+            {
+                addGroupCount(group, position, -measuredDelta);
+            }
+        }
+    }
+
+    public void setCrossSize(int position, int crossSize)
+    {
+        if (position < 0 || position >= count)
+        {
+            return;
+        }
+        int index = crossSizeLeafStart + position;
+        crossSizeTree[index] = crossSize;
+        for (index /= 2; index > 0; index /= 2)
+        {
+            crossSizeTree[index] = Math.max(crossSizeTree[index * 2], crossSizeTree[index * 2 + 1]);
+        }
+    }
+
+
+    // ---
+    // Lookup
+    // ---
+
+    public int getOffset(int position, int estimatedSize)
+    {
+        int size = 0;
+        int measured = 0;
+        for (int i = Math.max(0, Math.min(position, count)); i > 0; i -= i & -i)
+        {
+            size += sizeTree[i];
+            measured += measuredTree[i];
+        }
+        return size + (Math.max(0, Math.min(position, count)) - measured) * estimatedSize;
+    }
+
+    public int getPositionAtOffset(int offset, int estimatedSize)
+    {
+        // Descend the tree by binary lifting to find the last position which ends before the offset, the item after it contains the offset
+        int position = 0;
+        int size = 0;
+        int measured = 0;
+        for (int step = Integer.highestOneBit(Math.max(1, count)); step > 0; step /= 2)
+        {
+            int next = position + step;
+            if (next <= count && size + sizeTree[next] + (next - measured - measuredTree[next]) * estimatedSize <= offset)
+            {
+                position = next;
+                size += sizeTree[next];
+                measured += measuredTree[next];
+            }
+        }
+        return Math.max(0, Math.min(position, count - 1));
+    }
+
+    public int getTotalSize(int estimatedSize)
+    {
+        return measuredSize + (count - measuredCount) * estimatedSize;
+    }
+
+    public int getOffset(int position, int[] estimatedSizes)
+    {
+        // Unmeasured items use the estimate of the default group, corrected for the items in the other groups
+        position = Math.max(0, Math.min(position, count));
+        int offset = getOffset(position, estimatedSizes[DEFAULT_ESTIMATE_GROUP]);
+        for (int group = 1; group < MAX_ESTIMATE_GROUPS; group++)
+        {
+            if (groupCounts[group] > 0)
+            {
+                int unmeasured = 0;
+                for (int i = position; i > 0; i -= i & -i)
+                {
+                    unmeasured += groupTrees[group][i];
+                }
+                offset += unmeasured * (estimatedSizes[group] - estimatedSizes[DEFAULT_ESTIMATE_GROUP]);
+            }
+        }
+        return offset;
+    }
+
+    public int getPositionAtOffset(int offset, int[] estimatedSizes)
+    {
+        // Same as the single estimate descent, each node adds the estimates of the unmeasured items it covers
+        int defaultSize = estimatedSizes[DEFAULT_ESTIMATE_GROUP];
+        int position = 0;
+        int size = 0;
+        for (int step = Integer.highestOneBit(Math.max(1, count)); step > 0; step /= 2)
+        {
+            int next = position + step;
+            if (next <= count)
+            {
+                int nodeSize = sizeTree[next] + (step - measuredTree[next]) * defaultSize;
+                for (int group = 1; group < MAX_ESTIMATE_GROUPS; group++)
+                {
+                    if (groupCounts[group] > 0)
+                    {
+                        nodeSize += groupTrees[group][next] * (estimatedSizes[group] - defaultSize);
+                    }
+                }
+                if (size + nodeSize <= offset)
+                {
+                    position = next;
+                    size += nodeSize;
+                }
+            }
+        }
+        return Math.max(0, Math.min(position, count - 1));
+    }
+
+    public int getTotalSize(int[] estimatedSizes)
+    {
+        int total = getTotalSize(estimatedSizes[DEFAULT_ESTIMATE_GROUP]);
+        for (int group = 1; group < MAX_ESTIMATE_GROUPS; group++)
+        {
+            total += groupCounts[group] * (estimatedSizes[group] - estimatedSizes[DEFAULT_ESTIMATE_GROUP]);
+        }
+        return total;
+    }
+
+    public int getMeasuredCount()
+    {
+        return measuredCount;
+    }
+
+    public int getMaxCrossSize()
+    {
+        return crossSizeTree[1];
+    }
+
+
+    // ---
+    // Helpers
+    // ---
+
+    private void clearGroups()
+    {
+        if (groups.length != sizeTree.length)
+        {
+            groups = new byte[sizeTree.length];
+        }
+        else
+        {
+            Arrays.fill(groups, (byte)DEFAULT_ESTIMATE_GROUP);
+        }
+        for (int group = 1; group < MAX_ESTIMATE_GROUPS; group++)
+        {
+            if (groupTrees[group] != null && groupTrees[group].length != sizeTree.length)
+            {
+                groupTrees[group] = null;
+            }
+            else if (groupTrees[group] != null)
+            {
+                Arrays.fill(groupTrees[group], 0);
+            }
+            groupCounts[group] = 0;
+        }
+    }
+
+    private int[] getGroupTree(int group)
+    {
+        if (groupTrees[group] == null)
+        {
+            groupTrees[group] = new int[sizeTree.length];
+        }
+        return groupTrees[group];
+    }
+
+    private void addGroupCount(int group, int position, int delta)
+    {
+        int[] tree = getGroupTree(group);
+        groupCounts[group] += delta;
+        for (int i = position + 1; i <= count; i += i & -i)
+        {
+            tree[i] += delta;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * UniLayout helper: the default size estimator
+ * Keeps a histogram sketch of all measured sizes per view type and cross size bucket, and estimates using a quantile (the median by default) which isn't thrown off by a few very large or small items
+ * The sketch has a fixed size and counts every sample since the last reset, so the estimate settles instead of following the items which were scrolled through last
+ */
+public class UniQuantileSizeEstimator implements UniSizeEstimator
+{
+    // ---
+    // Constants
+    // ---
+
+    private static final int DEFAULT_BUCKET_SIZE = 64;
+    private static final float DEFAULT_QUANTILE = 0.5f;
+    private static final int EXACT_BIN_COUNT = 32;
+    private static final int OCTAVE_BIN_BITS = 4;
+    private static final int MAX_SIZE = 0xFFFFFF;
+    private static final int BIN_COUNT = getBin(MAX_SIZE) + 1;
+
+
+    // ---
+    // Members
+    // ---
+
+    private List<List<Samples>> viewTypes = new ArrayList<>();
+    private int bucketSize;
+    private float quantile;
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public UniQuantileSizeEstimator()
+    {
+        this(DEFAULT_BUCKET_SIZE, DEFAULT_QUANTILE);
+    }
+
+    public UniQuantileSizeEstimator(int bucketSize, float quantile)
+    {
+        this.bucketSize = Math.max(1, bucketSize);
+        this.quantile = Math.max(0, Math.min(1, quantile));
+    }
+
+
+    // ---
+    // Samples
+    // ---
+
+    @Override
+    public void reset()
+    {
+        viewTypes.clear();
+    }
+
+    @Override
+    public void addMeasuredSize(int viewType, int crossSize, int size)
+    {
+        getSamples(viewType, crossSize / bucketSize, true).add(size);
+        if (viewType != ALL_VIEW_TYPES)
+        {
+            getSamples(ALL_VIEW_TYPES, crossSize / bucketSize, true).add(size);
+        }
+    }
+
+
+    // ---
+    // Estimation
+    // ---
+
+    @Override
+    public int estimateSize(int viewType, int crossSize)
+    {
+        // Use the bucket for the cross size, or the nearest bucket with samples, then fall back to all view types
+        int bucket = crossSize / bucketSize;
+        Samples samples = getSamples(viewType, bucket, false);
+        if (samples == null)
+        {
+            samples = getNearestSamples(viewType, bucket);
+        }
+        if (samples != null)
+        {
+            return samples.getQuantile();
+        }
+        if (viewType != ALL_VIEW_TYPES)
+        {
+            return estimateSize(ALL_VIEW_TYPES, crossSize);
+        }
+        return NO_ESTIMATE;
+    }
+
+
+    // ---
+    // Helpers
+    // ---
+
+    private Samples getSamples(int viewType, int bucket, boolean create)
+    {
+        int index = viewType + 1;
+        if (index < 0)
+        {
+            return null;
+        }
+        while (create && index >= viewTypes.size())
+        {
+            viewTypes.add(new ArrayList<Samples>());
+        }
+        if (index < viewTypes.size())
+        {
+            for (Samples samples : viewTypes.get(index))
+            {
+                if (samples.bucket == bucket)
+                {
+                    return samples;
+                }
+            }
+            if (create)
+            {
+                Samples samples = new Samples(bucket);
+                viewTypes.get(index).add(samples);
+                return samples;
+            }
+        }
+        return null;
+    }
+
+    private Samples getNearestSamples(int viewType, int bucket)
+    {
+        int index = viewType + 1;
+        Samples result = null;
+        if (index >= 0 && index < viewTypes.size())
+        {
+            for (Samples samples : viewTypes.get(index))
+            {
+                if (result == null || Math.abs(samples.bucket - bucket) < Math.abs(result.bucket - bucket))
+                {
+                    result = samples;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int getBin(int size)
+    {
+        // Small sizes have a bin each, larger ones share bins which are at most 1/16th of their size wide
+        size = Math.max(0, Math.min(size, MAX_SIZE));
+        if (size < EXACT_BIN_COUNT)
+        {
+            return size;
+        }
+        int highestBit = 31 - Integer.numberOfLeadingZeros(size);
+        int octave = highestBit - (31 - Integer.numberOfLeadingZeros(EXACT_BIN_COUNT));
+        int fraction = (size >> (highestBit - OCTAVE_BIN_BITS)) & ((1 << OCTAVE_BIN_BITS) - 1);
+        return EXACT_BIN_COUNT + (octave << OCTAVE_BIN_BITS) + fraction;
+    }
+
+
+    // ---
+    // Histogram of one view type and cross size bucket
+    // ---
+
+    private class Samples
+    {
+        private int bucket;
+        private int[] counts = new int[BIN_COUNT];
+        private long[] totals = new long[BIN_COUNT];
+        private int count;
+        private int quantileValue;
+        private boolean changed;
+
+        private Samples(int bucket)
+        {
+            this.bucket = bucket;
+        }
+
+        private void add(int size)
+        {
+            int bin = getBin(size);
+            counts[bin]++;
+            totals[bin] += Math.max(0, Math.min(size, MAX_SIZE));
+            count++;
+            changed = true;
+        }
+
+        private int getQuantile()
+        {
+            // Walk the bins only when samples were added since the last estimate, the mean of the bin keeps equal sizes exact
+            if (changed)
+            {
+                int rank = Math.min(count - 1, (int)(quantile * count));
+                int bin = 0;
+                for (int seen = counts[0]; seen <= rank; seen += counts[bin])
+                {
+                    bin++;
+                }
+                quantileValue = (int)((totals[bin] + counts[bin] / 2) / counts[bin]);
+                changed = false;
+            }
+            return quantileValue;
+        }
+    }
+}
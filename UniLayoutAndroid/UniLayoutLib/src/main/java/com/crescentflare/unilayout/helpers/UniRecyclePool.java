@@ -0,0 +1,253 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * UniLayout helper: a pool of recycled items
+ * Stores items per view type id with a maximum size, the least recently recycled items are dropped when the pool is full
+ * Also keeps track of how many items should be created ahead of time and how many were created ahead or on demand
+ */
+public class UniRecyclePool<T>
+{
+    // ---
+    // Members
+    // ---
+
+    private List<ArrayDeque<T>> pools = new ArrayList<>();
+    private int[] limits = new int[0];
+    private int[] prefetchCounts = new int[0];
+    private int[] createdAheadCounts = new int[0];
+    private int[] createdOnDemandCounts = new int[0];
+    private int defaultLimit;
+
+
+    // ---
+    // Initialization
+    // ---
+
+    public UniRecyclePool(int defaultLimit)
+    {
+        this.defaultLimit = defaultLimit;
+    }
+
+
+    // ---
+    // Limits
+    // ---
+
+    public int getDefaultLimit()
+    {
+        return defaultLimit;
+    }
+
+    public void setDefaultLimit(int limit)
+    {
+        defaultLimit = Math.max(0, limit);
+        for (int i = 0; i < pools.size(); i++)
+        {
+            trim(i);
+        }
+    }
+
+    public int getLimit(int viewType)
+    {
+        if (viewType >= 0 && viewType < limits.length && limits[viewType] >= 0)
+        {
+            return limits[viewType];
+        }
+        return defaultLimit;
+    }
+
+    public void setLimit(int viewType, int limit)
+    {
+        if (viewType < 0)
+        {
+            return;
+        }
+        if (viewType >= limits.length)
+        {
+            int previousLength = limits.length;
+            limits = Arrays.copyOf(limits, viewType + 1);
+            Arrays.fill(limits, previousLength, limits.length, -1);
+        }
+        limits[viewType] = Math.max(-1, limit);
+        trim(viewType);
+    }
+
+
+    // ---
+    // Prefetching
+    // ---
+
+    public int getPrefetchCount(int viewType)
+    {
+        return viewType >= 0 && viewType < prefetchCounts.length ? prefetchCounts[viewType] : 0;
+    }
+
+    public void setPrefetchCount(int viewType, int count)
+    {
+        if (viewType >= 0)
+        {
+            prefetchCounts = ensureLength(prefetchCounts, viewType + 1);
+            prefetchCounts[viewType] = Math.max(0, count);
+        }
+    }
+
+    public int nextPrefetchViewType()
+    {
+        for (int i = 0; i < prefetchCounts.length; i++)
+        {
+            if (getCount(i) < Math.min(prefetchCounts[i], getLimit(i)))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public void countCreated(int viewType, boolean ahead)
+    {
+        if (viewType >= 0)
+        {
+            if (ahead)
+            {
+                createdAheadCounts = ensureLength(createdAheadCounts, viewType + 1);
+                createdAheadCounts[viewType]++;
+            }
+            else
+            {
+                createdOnDemandCounts = ensureLength(createdOnDemandCounts, viewType + 1);
+                createdOnDemandCounts[viewType]++;
+            }
+        }
+    }
+
+    public int getCreatedAheadCount(int viewType)
+    {
+        return viewType >= 0 && viewType < createdAheadCounts.length ? createdAheadCounts[viewType] : 0;
+    }
+
+    public int getCreatedOnDemandCount(int viewType)
+    {
+        return viewType >= 0 && viewType < createdOnDemandCounts.length ? createdOnDemandCounts[viewType] : 0;
+    }
+
+
+    // ---
+    // Take and put items
+    // ---
+
+    public T take(int viewType)
+    {
+        ArrayDeque<T> pool = getPool(viewType, false);
+        return pool != null ? pool.pollLast() : null;
+    }
+
+    public T take(int viewType, Matcher<T> matcher)
+    {
+        // Prefer the most recently recycled item accepted by the matcher, otherwise take the most recent one
+        ArrayDeque<T> pool = getPool(viewType, false);
+        if (pool == null)
+        {
+            return null;
+        }
+        Iterator<T> iterator = pool.descendingIterator();
+        while (iterator.hasNext())
+        {
+            T item = iterator.next();
+            if (matcher.matches(item))
+            {
+                iterator.remove();
+                return item;
+            }
+        }
+        return pool.pollLast();
+    }
+
+    public T peek(int viewType)
+    {
+        ArrayDeque<T> pool = getPool(viewType, false);
+        return pool != null ? pool.peekLast() : null;
+    }
+
+    public void put(int viewType, T item)
+    {
+        ArrayDeque<T> pool = getPool(viewType, true);
+        if (pool != null)
+        {
+            pool.addLast(item);
+            trim(viewType);
+        }
+    }
+
+    public int getCount(int viewType)
+    {
+        ArrayDeque<T> pool = getPool(viewType, false);
+        return pool != null ? pool.size() : 0;
+    }
+
+    public void clear()
+    {
+        for (ArrayDeque<T> pool : pools)
+        {
+            pool.clear();
+        }
+    }
+
+
+    // ---
+    // Helpers
+    // ---
+
+    private int[] ensureLength(int[] array, int length)
+    {
+        return array.length >= length ? array : Arrays.copyOf(array, length);
+    }
+
+    private ArrayDeque<T> getPool(int viewType, boolean create)
+    {
+        if (viewType < 0)
+        {
+            return null;
+        }
+        if (viewType >= pools.size())
+        {
+            if (!create)
+            {
+                return null;
+            }
+            while (viewType >= pools.size())
+            {
+                pools.add(new ArrayDeque<T>());
+            }
+        }
+        return pools.get(viewType);
+    }
+
+    private void trim(int viewType)
+    {
+        ArrayDeque<T> pool = getPool(viewType, false);
+        if (pool != null)
+        {
+            int limit = getLimit(viewType);
+            while (pool.size() > limit)
+            {
+                pool.pollFirst();
+            }
+        }
+    }
+
+
+    // ---
+    // Matcher to prefer specific items
+    // ---
+
+    public interface Matcher<T>
+    {
+        boolean matches(T item);
+    }
+}
@@ -0,0 +1,192 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * UniLayout helper: a circular buffer
+ * A double-ended list which can add or remove items at both ends in constant time, used to keep track of a window of items
+ */
+public class UniRingBuffer<T> implements Iterable<T>
+{
+    // ---
+    // Members
+    // ---
+
+    private Object[] items = new Object[16];
+    private int head;
+    private int size;
+
+
+    // ---
+    // Size
+    // ---
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        // Constant time, the slots keep their old items until they're overwritten, the head stays so refilling the window from either end reuses the same slots
+        size = 0;
+    }
+
+
+    // ---
+    // Item access
+    // ---
+
+    @SuppressWarnings("unchecked")
+    public T get(int index)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        return (T)items[(head + index) & (items.length - 1)];
+    }
+
+    public void set(int index, T item)
+    {
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        items[(head + index) & (items.length - 1)] = item;
+    }
+
+    public void addFirst(T item)
+    {
+        ensureCapacity(size + 1);
+        head = (head - 1) & (items.length - 1);
+        items[head] = item;
+        size++;
+    }
+
+    public void addLast(T item)
+    {
+        ensureCapacity(size + 1);
+        items[(head + size) & (items.length - 1)] = item;
+        size++;
+    }
+
+    public void add(int index, T item)
+    {
+        if (index < 0 || index > size)
+        {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+        if (index == 0)
+        {
+            addFirst(item);
+            return;
+        }
+        addLast(null);
+        for (int i = size - 1; i > index; i--)
+        {
+            set(i, get(i - 1));
+        }
+        set(index, item);
+    }
+
+    public T remove(int index)
+    {
+        T item = get(index);
+        if (index == 0)
+        {
+            return removeFirst();
+        }
+        for (int i = index; i < size - 1; i++)
+        {
+            set(i, get(i + 1));
+        }
+        removeLast();
+        return item;
+    }
+
+    public T removeFirst()
+    {
+        T item = get(0);
+        items[head] = null;
+        head = (head + 1) & (items.length - 1);
+        size--;
+        return item;
+    }
+
+    public T removeLast()
+    {
+        T item = get(size - 1);
+        items[(head + size - 1) & (items.length - 1)] = null;
+        size--;
+        return item;
+    }
+
+
+    // ---
+    // Iterator
+    // ---
+
+    @Override
+    public Iterator<T> iterator()
+    {
+        return new Iterator<T>()
+        {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext()
+            {
+                return index < size;
+            }
+
+            @Override
+            public T next()
+            {
+                if (index >= size)
+                {
+                    throw new NoSuchElementException();
+                }
+                return get(index++);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+
+    // ---
+    // Helper
+    // ---
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > items.length)
+        {
+            // The capacity stays a power of two, copy the items in order so the head starts at zero
+            int newCapacity = items.length * 2;
+            while (newCapacity < capacity)
+            {
+                newCapacity *= 2;
+            }
+            Object[] newItems = new Object[newCapacity];
+            int firstPart = Math.min(size, items.length - head);
+            System.arraycopy(items, head, newItems, 0, firstPart);
+            System.arraycopy(items, 0, newItems, firstPart, size - firstPart);
+            Arrays.fill(items, null);
+            items = newItems;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.crescentflare.unilayout.helpers;
+
+/**
+ * UniLayout helper: estimates the size of items which are not measured yet
+ * Works along the scroll direction of the container: receives the measured size along the list per view type and the available size across it, the all view types estimate is used when a view type has no samples yet
+ */
+public interface UniSizeEstimator
+{
+    int ALL_VIEW_TYPES = -1;
+    int NO_ESTIMATE = -1;
+
+    void reset();
+    void addMeasuredSize(int viewType, int crossSize, int size);
+    int estimateSize(int viewType, int crossSize);
+}
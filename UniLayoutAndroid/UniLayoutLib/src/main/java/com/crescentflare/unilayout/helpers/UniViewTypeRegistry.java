@@ -0,0 +1,47 @@
+package com.crescentflare.unilayout.helpers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UniLayout helper: maps view type names to ids
+ * Hands out ids in order of first use, each adapter using view type names keeps its own registry so the names are released together with the adapter
+ */
+public class UniViewTypeRegistry
+{
+    // ---
+    // Members
+    // ---
+
+    private Map<String, Integer> ids = new HashMap<>();
+    private List<String> names = new ArrayList<>();
+
+
+    // ---
+    // Lookup
+    // ---
+
+    public int getId(String name)
+    {
+        Integer id = ids.get(name);
+        if (id == null)
+        {
+            id = names.size();
+            ids.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    public String getName(int id)
+    {
+        return id >= 0 && id < names.size() ? names.get(id) : null;
+    }
+
+    public int getCount()
+    {
+        return names.size();
+    }
+}
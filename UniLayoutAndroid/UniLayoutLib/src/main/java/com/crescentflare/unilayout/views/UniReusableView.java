@@ -44,6 +44,7 @@ public class UniReusableView extends UniFrameContainer
     private int backgroundColor = 0xffffffff;
     private int underBackgroundColor = 0xffefefef;
     private int highlightColor;
+    private int itemPosition = -1;
     private boolean swipedOpen = false;
 
 
@@ -108,6 +109,17 @@ public class UniReusableView extends UniFrameContainer
         return itemView;
     }
 
+    public int getItemPosition()
+    {
+        return itemPosition;
+    }
+
+    public void setItemPosition(int itemPosition)
+    {
+        // Set by the container while the view shows an item, -1 otherwise
+        this.itemPosition = itemPosition;
+    }
+
     public void setItemView(View itemView)
     {
         if (itemView == this.itemView)